@@ -16,19 +16,23 @@
 package com.foundationdb.sql.client;
 
 import java.io.Closeable;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class StatementHelper implements Closeable
 {
     public final static String STALE_STATEMENT_CODE = "0A50A";
     public final static String PAST_VERSION_CODE = "40004";
+    public final static String DUPLICATE_KEY_CODE = "23501";
     public final static String ROLLBACK_PREFIX = "40";
     public final static boolean RETRY_ROLLBACK_DEFAULT = false;
 
@@ -96,6 +100,30 @@ public class StatementHelper implements Closeable
         }
     }
 
+    /** Send all of <code>queries</code> together, without waiting for the result
+     * of each before the next.
+     * A failure is reported as the driver's <code>BatchUpdateException</code>, whose
+     * update counts tell which went before it; see {@link #unwrapBatch}.
+     */
+    public int executeBatch(List<String> queries) throws SQLException {
+        if(stmt == null) {
+            stmt = conn.createStatement();
+        }
+        try {
+            for(String query : queries) {
+                stmt.addBatch(query);
+            }
+            int total = 0;
+            for(int count : stmt.executeBatch()) {
+                total += (count == Statement.SUCCESS_NO_INFO) ? 1 : Math.max(count, 0);
+            }
+            return total;
+        } catch(SQLException e) {
+            stmt.clearBatch();
+            throw e;
+        }
+    }
+
     public ResultSet executeQueryPrepared(String query, String... args) throws SQLException {
         return executeQueryPrepared(query, RETRY_ROLLBACK_DEFAULT, args);
     }
@@ -104,19 +132,14 @@ public class StatementHelper implements Closeable
         for(;;) {
             PreparedStatement ps;
             try {
-                ps = preparedMap.get(query);
-                if(ps == null) {
-                    ps = conn.prepareStatement(query);
-                }
-                for(int i = 0; i < args.length; ++i) {
-                    ps.setString(i+1, args[i]);
-                }
+                ps = getPrepared(query);
+                bind(ps, args);
                 return ps.executeQuery();
             } catch(SQLException e) {
                 if(!shouldRetry(e, retryRollback)) {
                     throw e;
                 }
-                preparedMap.remove(query);
+                removePrepared(query);
                 // retry
             }
         }
@@ -130,24 +153,100 @@ public class StatementHelper implements Closeable
         while (true) {
             PreparedStatement ps;
             try {
-                ps = preparedMap.get(prepared);
-                if(ps == null) {
-                    ps = conn.prepareStatement(prepared);
+                ps = getPrepared(prepared);
+                bind(ps, args);
+                return ps.executeUpdate();
+            } catch(SQLException e) {
+                if(!shouldRetry(e, retryRollback)) {
+                    throw e;
                 }
-                for(int i = 0; i < args.length; ++i) {
-                    ps.setString(i+1, args[i]);
+                removePrepared(prepared);
+                // retry
+            }
+        }
+    }
+
+    public int executeBatchPrepared(String prepared, List<? extends Object[]> rows) throws SQLException {
+        return executeBatchPrepared(prepared, RETRY_ROLLBACK_DEFAULT, rows);
+    }
+
+    /** Bind each row of <code>rows</code> and send them all as a single JDBC batch.
+     * A failure of any entry is reported as the underlying server exception,
+     * not the driver's <code>BatchUpdateException</code> wrapper.
+     */
+    public int executeBatchPrepared(String prepared, boolean retryRollback, List<? extends Object[]> rows) throws SQLException {
+        while (true) {
+            PreparedStatement ps = null;
+            try {
+                ps = getPrepared(prepared);
+                for(Object[] args : rows) {
+                    bind(ps, args);
+                    ps.addBatch();
                 }
-                return ps.executeUpdate();
+                int total = 0;
+                for(int count : ps.executeBatch()) {
+                    // Driver may not know the count for an entry, but it succeeded.
+                    total += (count == Statement.SUCCESS_NO_INFO) ? 1 : count;
+                }
+                return total;
             } catch(SQLException e) {
+                if(ps != null) {
+                    ps.clearBatch();
+                }
+                e = unwrapBatch(e);
                 if(!shouldRetry(e, retryRollback)) {
                     throw e;
                 }
-                preparedMap.remove(prepared);
+                removePrepared(prepared);
                 // retry
             }
         }
     }
 
+    /** A <code>null</code> argument is sent as an untyped SQL NULL, which the
+     * server takes as whatever the target column needs. Text is sent as such
+     * for the server to convert; anything else keeps its own type.
+     */
+    private static void bind(PreparedStatement ps, Object[] args) throws SQLException {
+        for(int i = 0; i < args.length; ++i) {
+            if(args[i] == null) {
+                ps.setNull(i+1, Types.NULL);
+            } else if(args[i] instanceof String) {
+                ps.setString(i+1, (String)args[i]);
+            } else {
+                ps.setObject(i+1, args[i]);
+            }
+        }
+    }
+
+    private PreparedStatement getPrepared(String prepared) throws SQLException {
+        PreparedStatement ps = preparedMap.get(prepared);
+        if(ps == null) {
+            ps = conn.prepareStatement(prepared);
+            preparedMap.put(prepared, ps);
+        }
+        return ps;
+    }
+
+    private void removePrepared(String prepared) {
+        PreparedStatement ps = preparedMap.remove(prepared);
+        if(ps != null) {
+            try {
+                ps.close();
+            } catch(SQLException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /** The driver reports the actual error of a failed batch entry as the next exception. */
+    public static SQLException unwrapBatch(SQLException e) {
+        if((e instanceof BatchUpdateException) && (e.getNextException() != null)) {
+            return e.getNextException();
+        }
+        return e;
+    }
+
     public static boolean shouldRetry(SQLException e, boolean retryRollback) {
         return STALE_STATEMENT_CODE.equals(e.getSQLState()) ||
                (retryRollback && e.getSQLState().startsWith(ROLLBACK_PREFIX));
@@ -156,4 +255,8 @@ public class StatementHelper implements Closeable
     public static boolean isPastVersion(SQLException e) {
         return PAST_VERSION_CODE.equals(e.getSQLState());
     }
+
+    public static boolean isDuplicateKey(SQLException e) {
+        return DUPLICATE_KEY_CODE.equals(e.getSQLState());
+    }
 }
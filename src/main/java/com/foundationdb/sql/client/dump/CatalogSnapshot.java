@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.dump;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The results of the catalog queries of a dump, by schema, query and parameters,
+ * which can be saved and used again by the next dump of the same server.
+ * The results for a schema are only good while its <code>marker</code> is the same.
+ */
+class CatalogSnapshot implements Serializable
+{
+    private static final long serialVersionUID = 2L;
+
+    private final String url;
+    private final Map<String,String> markers = new HashMap<>();
+    private final Map<String,Map<String,List<String[]>>> results = new HashMap<>();
+    private transient boolean changed;
+
+    public CatalogSnapshot(String url) {
+        this.url = url;
+    }
+
+    public boolean matches(String url) {
+        return this.url.equals(url);
+    }
+
+    public String getMarker(String schema) {
+        return markers.get(schema);
+    }
+
+    /** Forget the results for <code>schema</code> unless they were kept with the same <code>marker</code>. */
+    public void checkMarker(String schema, String marker) {
+        if (!marker.equals(markers.get(schema))) {
+            markers.put(schema, marker);
+            results.remove(schema);
+            changed = true;
+        }
+    }
+
+    /** The first of <code>params</code> is the schema. */
+    public List<String[]> get(String query, String... params) {
+        Map<String,List<String[]>> schemaResults = results.get(params[0]);
+        return (schemaResults == null) ? null : schemaResults.get(key(query, params));
+    }
+
+    public void put(List<String[]> rows, String query, String... params) {
+        Map<String,List<String[]>> schemaResults = results.get(params[0]);
+        if (schemaResults == null) {
+            schemaResults = new HashMap<>();
+            results.put(params[0], schemaResults);
+        }
+        schemaResults.put(key(query, params), rows);
+        changed = true;
+    }
+
+    /** Whether there are results that did not come from the file. */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    private static String key(String query, String[] params) {
+        StringBuilder key = new StringBuilder(query);
+        for (int i = 1; i < params.length; i++) {
+            key.append('\0').append(params[i]);
+        }
+        return key.toString();
+    }
+
+    /** @return the snapshot in <code>file</code>, or <code>null</code> if there is none that can be read */
+    public static CatalogSnapshot read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (ObjectInputStream istr = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (CatalogSnapshot)istr.readObject();
+        }
+        catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            return null;
+        }
+    }
+
+    /** Write to a new file and then replace, so that a dump running at the same time never sees part of one. */
+    public void write(File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (ObjectOutputStream ostr = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            ostr.writeObject(this);
+        }
+        if (!tmpFile.renameTo(file)) {
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Cannot replace " + file);
+            }
+        }
+        changed = false;
+    }
+}
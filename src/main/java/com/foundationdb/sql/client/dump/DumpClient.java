@@ -19,13 +19,17 @@ import com.foundationdb.sql.client.StatementHelper;
 import com.foundationdb.sql.jdbc.copy.CopyManager;
 
 import java.io.*;
+import java.security.MessageDigest;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class DumpClient
 {
     private static final String PROGRAM_NAME = "fdbsqldump";
     private static final String NL = System.getProperty("line.separator");
+    private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+    private static final int CSV_FETCH_SIZE = 10000;
 
     private DumpClientOptions options;
     private boolean dumpSchema = true;
@@ -37,8 +41,20 @@ public class DumpClient
     private StatementHelper stmtHelper = null;
     private String defaultSchema = null;
     private Writer output;
+    private OutputStream outputBytes;
     private Connection connection;
     private CopyManager copyManager;
+    private ExecutorService dataPool;
+    private BlockingQueue<Connection> dataConnections;
+    private Map<Table,Future<File>> pendingData;
+    private Map<Table,List<Future<List<DumpManifest.Entry>>>> pendingCsv;
+    private DumpManifest manifest, previous;
+    private Map<Table,Future<DumpManifest.GroupMarker>> pendingMarkers;
+    private Map<Table,String> groupFileNames = new HashMap<>();
+    private Map<String,Map<String,List<String[]>>> metadata = new HashMap<>();
+    private CatalogSnapshot catalog;
+    private Set<String> markedSchemas = new HashSet<>();
+    private ReadReport readReport;
 
 
 
@@ -50,7 +66,11 @@ public class DumpClient
             dumpClient.dump();
         } 
         catch (SQLException sqle) {
-            if (StatementHelper.isPastVersion(sqle) && (options.commitFrequency != options.COMMIT_AUTO)) {
+            if (StatementHelper.isPastVersion(sqle) && options.consistent) {
+                System.err.println("ERROR: Failed to commit, as a group took too long to read in one transaction. " +
+                        "Try adding \"--data-format=csv --group-ranges=n --threads=n\", to read big groups " +
+                        "in smaller key ranges, each in its own transaction.");
+            } else if (StatementHelper.isPastVersion(sqle) && (options.commitFrequency != options.COMMIT_AUTO)) {
                 System.err.println("ERROR: Failed to commit, as transaction took too long. " +
                         "There may be too much data to dump in a single commit." +
                         " Try add flag \"--commit=auto\", to split dump over multiple commits. If " +
@@ -96,10 +116,10 @@ public class DumpClient
             defaultSchema = schemas.keySet().iterator().next();
         }
         openConnection();
+        openCatalog();
         if (schemas.isEmpty()) {
-            ResultSet rs = stmtHelper.executeQuery("SELECT schema_name FROM information_schema.schemata");
-            while (rs.next()) {
-                String name = rs.getString(1);
+            for (String[] row : queryCatalog(LOAD_SCHEMAS_QUERY)) {
+                String name = row[0];
                 if (!"information_schema".equals(name) &&
                     !"security_schema".equals(name)) {
                     addSchema(name);
@@ -122,6 +142,9 @@ public class DumpClient
             // Have all the tables we will dump.
             loadForeignKeys();
             loadViews();
+            if (dumpData && (options.nthreads > 1)) {
+                startDataDumps();
+            }
             for (String schema : schemas.keySet()) {
                 if (dumpSchema) {
                     dumpSequences(schema);
@@ -134,6 +157,9 @@ public class DumpClient
                 }
             }
             if (dumpSchema && dumpData) {
+                if (manifest != null) {
+                    openOutputFile(DumpManifest.Kind.AFTER, DumpManifest.NO_GROUP, "foreign-keys.sql");
+                }
                 // Add foreign keys after all the data so that references are satisfied.
                 for (String schema : schemas.keySet()) {
                     for (Table table : schemas.get(schema).values()) {
@@ -144,9 +170,95 @@ public class DumpClient
                 }
             }
         }
+        if (manifest != null) {
+            output.close();
+            output = null;
+            outputBytes = null;
+            manifest.write(options.outputFile);
+            if (previous != null) {
+                deleteStaleFiles();
+            }
+        }
+        if (options.readReport != null) {
+            readReport.write(options.readReport);
+        }
+        if ((options.catalogCache != null) && catalog.isChanged()) {
+            catalog.write(options.catalogCache);
+        }
         close();
     }
 
+    private static final String LOAD_SCHEMAS_QUERY =
+        "SELECT schema_name FROM information_schema.schemata";
+
+    /** What is compared to tell whether the saved catalog results for a
+     * schema are still good: how many tables, columns, indexes and constraints
+     * it has, the newest table and index ids, so that one dropped and created
+     * again is noticed, and how many groupings and foreign keys from other
+     * schemas refer to it. This is one row for each schema that is dumped,
+     * however big the catalog is.
+     */
+    private static final String CATALOG_MARKER_QUERY =
+        "SELECT (SELECT COUNT(*) FROM information_schema.tables t WHERE t.table_schema = s.schema_name), "+
+        "       (SELECT MAX(t.table_id) FROM information_schema.tables t WHERE t.table_schema = s.schema_name), "+
+        "       (SELECT COUNT(*) FROM information_schema.columns c WHERE c.table_schema = s.schema_name), "+
+        "       (SELECT COUNT(*) FROM information_schema.indexes i WHERE i.table_schema = s.schema_name), "+
+        "       (SELECT MAX(i.index_id) FROM information_schema.indexes i WHERE i.table_schema = s.schema_name), "+
+        "       (SELECT COUNT(*) FROM information_schema.table_constraints tc WHERE tc.table_schema = s.schema_name), "+
+        "       (SELECT COUNT(*) FROM information_schema.grouping_constraints g WHERE g.unique_schema = s.schema_name), "+
+        "       (SELECT COUNT(*) FROM information_schema.referential_constraints r WHERE r.unique_constraint_schema = s.schema_name) "+
+        "FROM information_schema.schemata s "+
+        "WHERE s.schema_name = ?";
+
+    /** Use the catalog snapshot from <code>--catalog-cache</code> if it is
+     * for the same server, or else start a new one. The results for each
+     * schema are checked the first time the dump needs one of them.
+     */
+    protected void openCatalog() throws Exception {
+        if (options.catalogCache == null) {
+            catalog = new CatalogSnapshot("");
+            return;
+        }
+        String url = options.getURL((defaultSchema != null) ? defaultSchema : "information_schema");
+        catalog = CatalogSnapshot.read(options.catalogCache);
+        if ((catalog == null) || !catalog.matches(url)) {
+            catalog = new CatalogSnapshot(url);
+        }
+    }
+
+    /** The rows of a catalog query whose first parameter is the schema,
+     * from the snapshot if it has them.
+     */
+    protected List<String[]> loadCatalog(String query, String... params) throws SQLException {
+        String schema = params[0];
+        if ((options.catalogCache != null) && markedSchemas.add(schema)) {
+            List<String[]> rows = queryCatalog(CATALOG_MARKER_QUERY, schema);
+            catalog.checkMarker(schema, rows.isEmpty() ? "" : Arrays.toString(rows.get(0)));
+        }
+        List<String[]> rows = catalog.get(query, params);
+        if (rows == null) {
+            rows = queryCatalog(query, params);
+            catalog.put(rows, query, params);
+        }
+        return rows;
+    }
+
+    /** The rows of a catalog query, as strings, straight from the server. */
+    protected List<String[]> queryCatalog(String query, String... params) throws SQLException {
+        List<String[]> rows = new ArrayList<>();
+        ResultSet rs = stmtHelper.executeQueryPrepared(query, params);
+        int ncols = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            String[] row = new String[ncols];
+            for (int i = 0; i < ncols; i++) {
+                row[i] = rs.getString(i + 1);
+            }
+            rows.add(row);
+        }
+        rs.close();
+        return rows;
+    }
+
     private static final String LOAD_TABLES_QUERY =
         "SELECT QUOTE_IDENT(table_schema, '`'), "+
         "       table_name, "+
@@ -158,13 +270,11 @@ public class DumpClient
 
     protected void loadTables(String schema) throws SQLException {
         Map<String,Table> tables = schemas.get(schema);
-        ResultSet rs = stmtHelper.executeQueryPrepared(LOAD_TABLES_QUERY, schema);
-        while (rs.next()) {
-            String quotedSchema = rs.getString(1);
-            String name = rs.getString(2);
-            tables.put(name, new Table(schema, quotedSchema, name, rs.getString(4), rs.getString(3)));
+        for (String[] row : loadCatalog(LOAD_TABLES_QUERY, schema)) {
+            String quotedSchema = row[0];
+            String name = row[1];
+            tables.put(name, new Table(schema, quotedSchema, name, row[3], row[2]));
         }
-        rs.close();
     }
 
     private static final String LOAD_SEQUENCES_QUERY =
@@ -185,6 +295,7 @@ public class DumpClient
 
     protected void loadSequences (String schema) throws SQLException {
         Map<String, Sequence> seqs = sequences.get(schema);
+        // Not from the catalog snapshot: the current values are wanted every time.
         ResultSet rs = stmtHelper.executeQueryPrepared(LOAD_SEQUENCES_QUERY, schema);
         while (rs.next()) {
             String quotedSchema = rs.getString(1);
@@ -207,73 +318,110 @@ public class DumpClient
         "       QUOTE_IDENT(p.table_name, '`'), "+
         "       c.constraint_name, "+
         "       c.unique_constraint_name, "+
-        "       p.constraint_type = 'PRIMARY KEY' "+
+        "       p.constraint_type "+
         "FROM information_schema.grouping_constraints c "+
         "LEFT JOIN information_schema.table_constraints p "+
         "  ON  c.unique_schema = p.constraint_schema "+
         "  AND c.unique_constraint_name = p.constraint_name "+
         "WHERE p.table_name IS NOT NULL AND (c.constraint_schema = ? OR c.unique_schema = ?)";
 
-    private static final String LOAD_PRIMARY_KEYS =
-            "SELECT c.constraint_schema, "+
-                    "c.constraint_name, "+
-                    "c.table_schema, "+
-                    "c.table_name "+
-                    "FROM information_schema.table_constraints c "+
-                    "WHERE c.constraint_type = 'PRIMARY KEY'";
-    
     protected void loadGroups(String schema, Deque<String> pending) throws SQLException {
-        ResultSet rs = stmtHelper.executeQueryPrepared(LOAD_GROUPS_QUERY, schema, schema);
-        while (rs.next()) {
-            Table child = findOrCreateTable(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), pending);
-            Table parent = findOrCreateTable(rs.getString(5), rs.getString(6), rs.getString(7), rs.getString(8), pending);
+        for (String[] row : loadCatalog(LOAD_GROUPS_QUERY, schema, schema)) {
+            Table child = findOrCreateTable(row[0], row[1], row[2], row[3], pending);
+            Table parent = findOrCreateTable(row[4], row[5], row[6], row[7], pending);
             child.parent = parent;
             parent.children.add(child);
-            child.childKeys = loadKeys(child.schema, child.name, rs.getString(9));
-            boolean parentIsPrimary = rs.getBoolean(11);
+            child.childKeys = loadKeys(child.schema, child.name, row[8]);
+            boolean parentIsPrimary = "PRIMARY KEY".equals(row[10]);
             List<String> keys = null;
             if (parentIsPrimary)
                 keys = parent.primaryKeys;
             if (keys == null)
-                keys = loadKeys(parent.schema, parent.name, rs.getString(10));
+                keys = loadKeys(parent.schema, parent.name, row[9]);
             child.parentKeys = keys;
             if ((parent.primaryKeys == null) && parentIsPrimary)
                 parent.primaryKeys = keys;
         }
-        rs.close();
-        ResultSet rsPk = stmtHelper.executeQuery(LOAD_PRIMARY_KEYS);
-        HashMap<String, String> tableCol = new HashMap<>();
-        String tableID;
-        String constraintName;
-        while (rsPk.next()) {
-            tableID = rsPk.getString(3)+rsPk.getString(4);
-            constraintName = rsPk.getString(2);
-            tableCol.put(tableID, constraintName);
-        }
-        rsPk.close();
         for (Table table : schemas.get(schema).values()) {
             if (table.primaryKeys == null) {
-                table.primaryKeys = loadKeys(table.schema, table.name, tableCol.get(table.schema+table.name));
+                String[] constraint = loadConstraint(table.schema, table.name, "PRIMARY KEY");
+                table.primaryKeys = loadKeys(table.schema, table.name, (constraint == null) ? null : constraint[0]);
             }
         }
     }
 
+    private static final String LOAD_CONSTRAINTS_QUERY =
+        "SELECT table_name, "+
+        "       constraint_type, "+
+        "       constraint_name, "+
+        "       QUOTE_IDENT(constraint_name, '`') "+
+        "FROM information_schema.table_constraints "+
+        "WHERE table_schema = ? AND constraint_type IN ('PRIMARY KEY', 'GROUPING')";
+
+    /** @return the name and quoted name of the table's constraint of the given type, or <code>null</code> */
+    protected String[] loadConstraint(String schema, String table, String type) throws SQLException {
+        List<String[]> rows = loadMetadata(LOAD_CONSTRAINTS_QUERY, 2, schema, table, type);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
     private static final String LOAD_KEYS_QUERY =
-        "SELECT QUOTE_IDENT(column_name, '`') "+
+        "SELECT table_name, "+
+        "       constraint_name, "+
+        "       QUOTE_IDENT(column_name, '`') "+
         "FROM information_schema.key_column_usage "+
-        "WHERE table_schema = ? AND table_name = ? AND constraint_name = ? "+
-        "ORDER BY ordinal_position";
+        "WHERE table_schema = ? "+
+        "ORDER BY table_name, constraint_name, ordinal_position";
 
     protected List<String> loadKeys(String schema, String table, String constraint) throws SQLException {
         List<String> keys = new ArrayList<String>();
-        ResultSet rs = stmtHelper.executeQueryPrepared(LOAD_KEYS_QUERY, schema, table, constraint);
-        while (rs.next()) {
-            keys.add(rs.getString(1));
+        for (String[] row : loadMetadata(LOAD_KEYS_QUERY, 2, schema, table, constraint)) {
+            keys.add(row[0]);
         }
-        rs.close();
         return keys;
     }
 
+    /** The rows of one of the metadata queries above whose first <code>nkeys</code>
+     * columns are <code>keys</code>, without those columns.
+     * Each query gets everything about the tables of a whole schema at once,
+     * the first time any of them is needed, rather than a query per table or index.
+     */
+    protected List<String[]> loadMetadata(String query, int nkeys, String schema, String... keys) throws SQLException {
+        String cacheKey = schema + '\0' + query;
+        Map<String,List<String[]>> rowsByKey = metadata.get(cacheKey);
+        if (rowsByKey == null) {
+            rowsByKey = new HashMap<>();
+            for (String[] catalogRow : loadCatalog(query, schema)) {
+                String key = metadataKey(Arrays.copyOf(catalogRow, nkeys));
+                List<String[]> rows = rowsByKey.get(key);
+                if (rows == null) {
+                    rows = new ArrayList<>();
+                    rowsByKey.put(key, rows);
+                }
+                rows.add(Arrays.copyOfRange(catalogRow, nkeys, catalogRow.length));
+            }
+            metadata.put(cacheKey, rowsByKey);
+        }
+        List<String[]> rows = rowsByKey.get(metadataKey(keys));
+        if (rows == null) {
+            return Collections.emptyList();
+        }
+        return rows;
+    }
+
+    private static String metadataKey(String[] keys) {
+        StringBuilder key = new StringBuilder();
+        for (String k : keys) {
+            if (k == null)
+                return null;
+            key.append(k).append('\0');
+        }
+        return key.toString();
+    }
+
+    private static int intValue(String value) {
+        return (value == null) ? 0 : Integer.parseInt(value);
+    }
+
     private static final String LOAD_VIEWS_QUERY =
         "SELECT QUOTE_IDENT(table_schema, '`'), "+
         "       table_name, " +
@@ -284,30 +432,28 @@ public class DumpClient
         "ORDER BY table_name";
 
     private static final String LOAD_VIEWS_USAGE_QUERY =
-        "SELECT table_schema, "+
+        "SELECT view_name, "+
+        "       table_schema, "+
         "       table_name "+
         "FROM information_schema.view_table_usage "+
-        "WHERE view_schema = ? AND view_name = ?";
+        "WHERE view_schema = ?";
 
     protected void loadViews() throws SQLException {
         for (Map.Entry<String,Map<String,View>> entry : views.entrySet()) {
             String schema = entry.getKey();
             Map<String,View> views = entry.getValue();
-            ResultSet rs = stmtHelper.executeQueryPrepared(LOAD_VIEWS_QUERY, schema);
-            while (rs.next()) {
-                String quotedSchema = rs.getString(1);
-                String name = rs.getString(2);
-                String quotedName = rs.getString(3);
-                views.put(name, new View(schema, quotedSchema, name, quotedName, rs.getString(4)));
+            for (String[] row : loadCatalog(LOAD_VIEWS_QUERY, schema)) {
+                String quotedSchema = row[0];
+                String name = row[1];
+                String quotedName = row[2];
+                views.put(name, new View(schema, quotedSchema, name, quotedName, row[3]));
             }
-            rs.close();
         }
         for (Map.Entry<String,Map<String,View>> entry : views.entrySet()) {
             for (View view : entry.getValue().values()) {
-                ResultSet rs = stmtHelper.executeQueryPrepared(LOAD_VIEWS_USAGE_QUERY, entry.getKey(), view.name);
-                while (rs.next()) {
-                    String schema = rs.getString(1);
-                    String name = rs.getString(2);
+                for (String[] row : loadMetadata(LOAD_VIEWS_USAGE_QUERY, 1, entry.getKey(), view.name)) {
+                    String schema = row[0];
+                    String name = row[1];
                     Viewed viewed = null;
                     Map<String,Table> stables = schemas.get(schema);
                     if (stables != null)
@@ -322,7 +468,6 @@ public class DumpClient
                         viewed.dependedOn.add(view);
                     }
                 }
-                rs.close();
             }
         }
     }
@@ -355,24 +500,24 @@ public class DumpClient
         ForeignKey fkey = null;
         Set<String> schemas = this.schemas.keySet();
         for (String schema : schemas) {
-            ResultSet rs = stmtHelper.executeQueryPrepared(LOAD_FOREIGN_KEYS_QUERY, schema, schema);
-            while (rs.next()) {
-                int pos = rs.getInt(1);
-                String name = rs.getString(2);
-                String quotedName = rs.getString(3);
-                String match = rs.getString(4);
-                String update = rs.getString(5);
-                String delete = rs.getString(6);
-                String referencingSchema = rs.getString(7);
-                String quotedReferencingSchema = rs.getString(8);
-                String referencingTable = rs.getString(9);
-                String quotedReferencingTable = rs.getString(10);
-                String referencingColumn = rs.getString(11);
-                String referencedSchema = rs.getString(12);
-                String quotedReferencedSchema = rs.getString(13);
-                String referencedTable = rs.getString(14);
-                String quotedReferencedTable = rs.getString(15);
-                String referencedColumn = rs.getString(16);
+            // Not from the catalog snapshot: a rule can change without changing the marker.
+            for (String[] row : queryCatalog(LOAD_FOREIGN_KEYS_QUERY, schema, schema)) {
+                int pos = intValue(row[0]);
+                String name = row[1];
+                String quotedName = row[2];
+                String match = row[3];
+                String update = row[4];
+                String delete = row[5];
+                String referencingSchema = row[6];
+                String quotedReferencingSchema = row[7];
+                String referencingTable = row[8];
+                String quotedReferencingTable = row[9];
+                String referencingColumn = row[10];
+                String referencedSchema = row[11];
+                String quotedReferencedSchema = row[12];
+                String referencedTable = row[13];
+                String quotedReferencedTable = row[14];
+                String referencedColumn = row[15];
                 if (!schema.equals(referencingSchema) &&
                     schemas.contains(referencedSchema))
                     continue; // Will get to it then.
@@ -393,7 +538,6 @@ public class DumpClient
                 fkey.referencingColumns.add(referencingColumn);
                 fkey.referencedColumns.add(referencedColumn);
             }
-            rs.close();
         }
     }
 
@@ -558,6 +702,12 @@ public class DumpClient
     }
     
     protected void dumpGroup(Table table) throws SQLException, IOException {
+        String groupName = null, fileName = null;
+        if (manifest != null) {
+            groupName = table.schema + "." + table.name;
+            fileName = groupFileName(table);
+            openOutputFile(DumpManifest.Kind.DDL, groupName, fileName + ".sql");
+        }
         outputGroupSummary(table, 1);
         output.write(NL);
         if (dumpSchema) {
@@ -579,9 +729,32 @@ public class DumpClient
             if (!views.isEmpty())
                 dumpViews(views);
         }
-        if (dumpData) {
-            dumpData(table);
+        boolean unchanged = dumpData && options.incremental && dumpedBefore(table);
+        if (dumpData && (options.dataFormat == DumpClientOptions.DataFormat.CSV)) {
+            dumpCsv(table, unchanged);
+        }
+        else if (dumpData) {
+            if (unchanged) {
+                if (pendingData != null) {
+                    // Its thread only read the marker.
+                    await(pendingData.remove(table));
+                }
+            }
+            else if (manifest != null) {
+                if (pendingData != null) {
+                    // Already being written there.
+                    manifest.add(DumpManifest.Kind.DATA, groupName, fileName + ".data.sql");
+                }
+                else {
+                    openOutputFile(DumpManifest.Kind.DATA, groupName, fileName + ".data.sql");
+                }
+            }
+            if (!unchanged)
+                dumpData(table);
             if (!afterDataStatements.isEmpty()) {
+                if (manifest != null) {
+                    openOutputFile(DumpManifest.Kind.AFTER, groupName, fileName + ".after.sql");
+                }
                 String stmt;
                 while ((stmt = afterDataStatements.poll()) != null) {
                     output.write(stmt);
@@ -591,6 +764,21 @@ public class DumpClient
         }
     }
 
+    /** The start of the names of the files for the given group in a
+     * directory format dump: a sequence number, which keeps them in order
+     * and apart, and the root table name, with anything that might not
+     * be allowed in a file name replaced.
+     */
+    protected String groupFileName(Table rootTable) {
+        String fileName = groupFileNames.get(rootTable);
+        if (fileName == null) {
+            fileName = String.format("%04d-%s", groupFileNames.size() + 1,
+                                     fileNameSafe(rootTable.schema + "." + rootTable.name));
+            groupFileNames.put(rootTable, fileName);
+        }
+        return fileName;
+    }
+
     protected void outputGroupSummary(Table table, int depth) throws IOException {
         StringBuilder summary = new StringBuilder("---");
         for (int i = 0; i < depth; i++)
@@ -639,7 +827,8 @@ public class DumpClient
     }
 
     private static final String OUTPUT_CREATE_TABLE_QUERY =
-        "SELECT column_name, "+
+        "SELECT table_name, "+
+        "       column_name, "+
         "       QUOTE_IDENT(column_name, '`'), "+
         "       data_type, "+
         "       character_maximum_length, "+
@@ -652,20 +841,9 @@ public class DumpClient
         "       sequence_name, "+
         "       identity_generation "+
         "FROM information_schema.columns "+
-        "WHERE table_schema = ? AND table_name = ? "+
-        "ORDER BY ordinal_position";
+        "WHERE table_schema = ? "+
+        "ORDER BY table_name, ordinal_position";
 
-    private static final String LOAD_PRIMARY_KEY_CONSTRAINT_NAME =
-            "SELECT QUOTE_IDENT(c.constraint_name, '`') "+
-                    "FROM information_schema.table_constraints c "+
-                    "WHERE c.constraint_type = 'PRIMARY KEY' AND c.table_schema = ? AND c.table_name = ?";
-    
-    private static final String LOAD_GROUPING_CONSTRAINT_NAME =
-            "SELECT QUOTE_IDENT(c.constraint_name, '`') "+
-                    "FROM information_schema.table_constraints c "+
-                    "WHERE c.constraint_type = 'GROUPING' AND c.table_schema = ? AND c.table_name = ?";
-    
-    
     protected void outputCreateTable(Table table) throws SQLException, IOException {
         Set<String> pkey = null, gkey = null;
         boolean isRootTable = true;
@@ -676,9 +854,8 @@ public class DumpClient
         StringBuilder sql = new StringBuilder("CREATE TABLE ");
         qualifiedName(table, sql);
         sql.append('(');
-        ResultSet rs = stmtHelper.executeQueryPrepared(OUTPUT_CREATE_TABLE_QUERY, table.schema, table.name);
         boolean first = true;
-        while (rs.next()) {
+        for (String[] row : loadMetadata(OUTPUT_CREATE_TABLE_QUERY, 1, table.schema, table.name)) {
             if (first) {
                 first = false;
             }
@@ -686,26 +863,25 @@ public class DumpClient
                 sql.append(',');
             }
             sql.append(NL).append("  ");
-            String column = rs.getString(1);
-            String quotedColumn = rs.getString(2);
+            String quotedColumn = row[1];
             sql.append(quotedColumn);
             sql.append(' ');
-            type(rs.getString(3), rs.getInt(4), rs.getInt(5), rs.getInt(6), sql);
-            String charset = rs.getString(7);
-            if (!rs.wasNull()) {
+            type(row[2], intValue(row[3]), intValue(row[4]), intValue(row[5]), sql);
+            String charset = row[6];
+            if (charset != null) {
                 sql.append(" CHARACTER SET ").append(charset);
             }
-            String collation = rs.getString(8);
-            if (!rs.wasNull()) {
+            String collation = row[7];
+            if (collation != null) {
                 sql.append(" COLLATE ").append(collation);
             }
-            if ("NO".equals(rs.getString(9))) {
+            if ("NO".equals(row[8])) {
                 sql.append(" NOT NULL");
             }
-            String identityGenerate = rs.getString(12);
-            if (!rs.wasNull()) {
-                String sequenceSchema = rs.getString(10);
-                String sequenceName = rs.getString(11);
+            String identityGenerate = row[11];
+            if (identityGenerate != null) {
+                String sequenceSchema = row[9];
+                String sequenceName = row[10];
                 Sequence seq = sequences.get(sequenceSchema).get(sequenceName);
                 String generated = " GENERATED " + identityGenerate +
                     " AS IDENTITY (START WITH " + seq.startWith +
@@ -726,32 +902,27 @@ public class DumpClient
             if (pkey != null) {
                 pkey.remove(quotedColumn);
                 if (pkey.isEmpty()) {
-                    ResultSet rsPk = stmtHelper.executeQueryPrepared(LOAD_PRIMARY_KEY_CONSTRAINT_NAME, table.schema, table.name);
-                    rsPk.next();
-                    sql.append(',').append(NL).append("  CONSTRAINT ").append(rsPk.getString(1)).append(" PRIMARY KEY ");
+                    String[] constraint = loadConstraint(table.schema, table.name, "PRIMARY KEY");
+                    sql.append(',').append(NL).append("  CONSTRAINT ").append(constraint[1]).append(" PRIMARY KEY ");
                     keys(table.primaryKeys, sql);
                     pkey = null;
-                    rsPk.close();
                 }
 
             }
             if (gkey != null) {
                 gkey.remove(quotedColumn);
                 if (gkey.isEmpty()) {
-                    ResultSet rsGk = stmtHelper.executeQueryPrepared(LOAD_GROUPING_CONSTRAINT_NAME, table.schema, table.name);
-                    rsGk.next();
-                    sql.append(',').append(NL).append("  CONSTRAINT ").append(rsGk.getString(1)).append(" GROUPING FOREIGN KEY");
+                    String[] constraint = loadConstraint(table.schema, table.name, "GROUPING");
+                    sql.append(',').append(NL).append("  CONSTRAINT ").append(constraint[1]).append(" GROUPING FOREIGN KEY");
                     keys(table.childKeys, sql);
                     sql.append(" REFERENCES ");
                     qualifiedName(table.parent, sql);
                     keys(table.parentKeys, sql);
                     gkey = null;
-                    rsGk.close();
                     isRootTable = false;
                 }
             }
         }
-        rs.close();
         assert (pkey == null) : pkey;
         assert (gkey == null) : gkey;
         sql.append(NL).append(")");
@@ -803,7 +974,8 @@ public class DumpClient
     }
 
     private static final String OUTPUT_CREATE_INDEXES_FOR_TABLE_QUERY =
-        "SELECT index_name, "+
+        "SELECT table_name, "+
+        "       index_name, "+
         "       QUOTE_IDENT(index_name, '`'), "+
         "       is_unique, "+
         "       join_type, "+
@@ -811,16 +983,13 @@ public class DumpClient
         "       storage_format, " +
         "       QUOTE_IDENT(constraint_name, '`') "+
         "FROM information_schema.indexes "+
-        "WHERE table_schema = ? AND table_name = ? AND index_type IN ('INDEX','UNIQUE') "+
-        "ORDER BY index_id";
+        "WHERE table_schema = ? AND index_type IN ('INDEX','UNIQUE') "+
+        "ORDER BY table_name, index_id";
 
     protected void outputCreateIndexesForTable(Table table) throws SQLException, IOException {
-        ResultSet rs = stmtHelper.executeQueryPrepared(OUTPUT_CREATE_INDEXES_FOR_TABLE_QUERY, table.schema, table.name);
-        while (rs.next()) {
-            
-            outputCreateIndex(table, rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(7), rs.getString(6));
+        for (String[] row : loadMetadata(OUTPUT_CREATE_INDEXES_FOR_TABLE_QUERY, 1, table.schema, table.name)) {
+            outputCreateIndex(table, row[0], row[1], row[2], row[3], row[4], row[6], row[5]);
         }
-        rs.close();
     }    
 
     protected void outputCreateIndex(Table table, String index, String quotedIndex, String unique, String joinType, String indexMethod, String quotedConstraintName, String storageFormat) throws SQLException, IOException {
@@ -861,23 +1030,24 @@ public class DumpClient
     }
     
     private static final String OUTPUT_CREATE_INDEX_QUERY =
-            "SELECT column_schema, "+
+            "SELECT index_table_name, "+
+                    "       index_name, "+
+                    "       column_schema, "+
                     "       QUOTE_IDENT(column_schema, '`'), "+
                     "       column_table, "+
                     "       QUOTE_IDENT(column_table, '`'), "+
                     "       QUOTE_IDENT(column_name, '`'), "+
                     "       is_ascending "+
                     "FROM information_schema.index_columns " +
-                    "WHERE index_table_schema = ? AND index_table_name = ? AND index_name = ? " +
-                    "ORDER BY ordinal_position";
+                    "WHERE index_table_schema = ? " +
+                    "ORDER BY index_table_name, index_name, ordinal_position";
 
         private void appendColumns(StringBuilder sql, String joinType, String indexMethod, Table table, String index , String storageFormat) throws SQLException, IOException {
         sql.append("(");
         if (indexMethod != null)
             sql.append(indexMethod).append("(");
-        ResultSet rs = stmtHelper.executeQueryPrepared(OUTPUT_CREATE_INDEX_QUERY, table.schema, table.name, index);
         boolean first = true;
-        while (rs.next()) {
+        for (String[] row : loadMetadata(OUTPUT_CREATE_INDEX_QUERY, 2, table.schema, table.name, index)) {
             if (first) {
                 first = false;
             }
@@ -886,10 +1056,10 @@ public class DumpClient
             }
             if (joinType != null) {
                 // Group index.
-                String indexSchema = rs.getString(1);
-                String quotedIndexSchema = rs.getString(2);
-                String indexTable = rs.getString(3);
-                String quotedIndexTable = rs.getString(4);
+                String indexSchema = row[0];
+                String quotedIndexSchema = row[1];
+                String indexTable = row[2];
+                String quotedIndexTable = row[3];
                 if (!table.schema.equals(indexSchema) ||
                     !table.name.equals(indexTable)) {
                     if (!table.schema.equals(indexSchema)) {
@@ -904,12 +1074,11 @@ public class DumpClient
                     }
                 }
             }
-            sql.append(rs.getString(5));
-            if ("NO".equals(rs.getString(6))) {
+            sql.append(row[4]);
+            if ("NO".equals(row[5])) {
                 sql.append(" DESC");
             }
         }
-        rs.close();
         if (indexMethod != null)
             sql.append(")");
         sql.append(')');
@@ -1097,7 +1266,7 @@ public class DumpClient
         sql.append(table.quotedName);
     }
 
-    protected void dumpData(Table rootTable) throws SQLException, IOException {
+    protected String dumpDataQuery(Table rootTable) {
         StringBuilder sql = new StringBuilder("CALL sys.dump_group('");
         sql.append(rootTable.schema.replace("'", "''"));
         sql.append("','");
@@ -1109,15 +1278,706 @@ public class DumpClient
             sql.append(options.commitFrequency);
         }
         sql.append(")");
-        copyManager.copyOut(sql.toString(), output);
-        output.write(NL);
+        return sql.toString();
     }
 
-    protected void openOutput() throws Exception {
-        if (options.outputFile != null)
-            output = new OutputStreamWriter(new FileOutputStream(options.outputFile), "UTF-8");
+    protected void dumpData(Table rootTable) throws SQLException, IOException {
+        if (pendingData != null) {
+            File file = awaitData(rootTable);
+            if (manifest == null) {
+                copyData(file);
+            }
+        }
+        else {
+            // The COPY data is already UTF-8, so it need not be decoded and encoded again.
+            output.flush();
+            String started = beginRead(connection);
+            boolean success = false;
+            try {
+                copyManager.copyOut(dumpDataQuery(rootTable), outputBytes);
+                endRead(connection, rootTable, null, started);
+                success = true;
+            }
+            finally {
+                if (!success)
+                    abortRead(connection);
+            }
+        }
+        if (manifest == null) {
+            output.write(NL);
+        }
+    }
+
+    /** Start dumping the data of every group, in the order they will be
+     * output, each into its own temporary file, on as many connections as
+     * there are threads. The DDL is still written by this thread, which
+     * copies each file in when it gets to that group.
+     * In a directory format dump, each group is written straight into its
+     * data file instead.
+     * The groups are each read in their own transaction, not in one, which
+     * with <code>--consistent</code> is also reported.
+     */
+    protected void startDataDumps() throws SQLException, IOException {
+        dataConnections = new ArrayBlockingQueue<>(options.nthreads);
+        for (int i = 0; i < options.nthreads; i++) {
+            dataConnections.add(openDataConnection());
+        }
+        dataPool = Executors.newFixedThreadPool(options.nthreads);
+        if (options.incremental) {
+            // All submitted ahead of the data, which waits for them.
+            pendingMarkers = new HashMap<>();
+            for (String schema : schemas.keySet()) {
+                for (Table table : schemas.get(schema).values()) {
+                    if (table.parent == null) {
+                        pendingMarkers.put(table, dataPool.submit(new GroupMarkerRead(table)));
+                    }
+                }
+            }
+        }
+        if (options.dataFormat == DumpClientOptions.DataFormat.CSV) {
+            pendingCsv = new HashMap<>();
+            for (String schema : schemas.keySet()) {
+                for (Table table : schemas.get(schema).values()) {
+                    if (table.parent == null) {
+                        groupFileName(table);
+                        List<Future<List<DumpManifest.Entry>>> ranges = new ArrayList<>();
+                        // Not worth cutting up a group that will be kept.
+                        List<KeyRange> keyRanges = isUnchanged(table) ?
+                            Collections.<KeyRange>singletonList(null) : keyRanges(table);
+                        for (KeyRange range : keyRanges) {
+                            ranges.add(dataPool.submit(new GroupCsvExport(table, range)));
+                        }
+                        pendingCsv.put(table, ranges);
+                    }
+                }
+            }
+            dataPool.shutdown();
+            return;
+        }
+        pendingData = new HashMap<>();
+        for (String schema : schemas.keySet()) {
+            for (Table table : schemas.get(schema).values()) {
+                if (table.parent == null) {
+                    File file = null;
+                    if (manifest != null) {
+                        file = new File(options.outputFile, groupFileName(table) + ".data.sql");
+                    }
+                    pendingData.put(table, dataPool.submit(new GroupDataDump(table, file)));
+                }
+            }
+        }
+        dataPool.shutdown();
+    }
+
+    protected class GroupDataDump implements Callable<File> {
+        private final Table rootTable;
+        private File file;
+
+        public GroupDataDump(Table rootTable, File file) {
+            this.rootTable = rootTable;
+            this.file = file;
+        }
+
+        @Override
+        public File call() throws Exception {
+            if (isUnchanged(rootTable))
+                return null;
+            Connection conn = dataConnections.take();
+            if (file == null) {
+                file = File.createTempFile(PROGRAM_NAME + "-", ".sql");
+                file.deleteOnExit();
+            }
+            boolean success = false;
+            try (OutputStream ostr = new BufferedOutputStream(new FileOutputStream(file), OUTPUT_BUFFER_SIZE)) {
+                String started = beginRead(conn);
+                new CopyManager((com.foundationdb.sql.jdbc.core.BaseConnection)conn).copyOut(dumpDataQuery(rootTable), ostr);
+                endRead(conn, rootTable, null, started);
+                success = true;
+            }
+            finally {
+                if (!success) {
+                    abortRead(conn);
+                    file.delete();
+                }
+                dataConnections.add(conn);
+            }
+            return file;
+        }
+    }
+
+    /** Wait for the data of the given group to be written. */
+    protected File awaitData(Table rootTable) throws SQLException, IOException {
+        return await(pendingData.remove(rootTable));
+    }
+
+    /** Wait for a dump thread to finish something. */
+    protected static <T> T await(Future<T> future) throws SQLException, IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException ex) {
+            throw new IOException(ex);
+        }
+        catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SQLException)
+                throw (SQLException)cause;
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /** Copy the data of a group to the output and get rid of the file. */
+    protected void copyData(File file) throws IOException {
+        output.flush();
+        try (InputStream istr = new FileInputStream(file)) {
+            byte[] buffer = new byte[65536];
+            int n;
+            while ((n = istr.read(buffer)) > 0) {
+                outputBytes.write(buffer, 0, n);
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    protected static String fileNameSafe(String name) {
+        return name.replaceAll("[^\\w.-]", "_");
+    }
+
+    /** Export the tables of a group to CSV files and add them to the manifest,
+     * followed by what has to come after the data.
+     */
+    protected void dumpCsv(Table rootTable, boolean unchanged) throws SQLException, IOException {
+        List<DumpManifest.Entry> entries;
+        if (pendingCsv != null) {
+            // The ranges in key order, or none if unchanged.
+            entries = new ArrayList<>();
+            for (Future<List<DumpManifest.Entry>> range : pendingCsv.remove(rootTable)) {
+                entries.addAll(await(range));
+            }
+        }
+        else if (unchanged) {
+            entries = Collections.emptyList();
+        }
+        else {
+            entries = exportCsv(connection, rootTable, null);
+        }
+        for (DumpManifest.Entry entry : entries) {
+            manifest.add(entry);
+        }
+        if (!afterDataStatements.isEmpty()) {
+            openOutputFile(DumpManifest.Kind.AFTER, rootTable.schema + "." + rootTable.name,
+                           groupFileName(rootTable) + ".after.sql");
+            String stmt;
+            while ((stmt = afterDataStatements.poll()) != null) {
+                output.write(stmt);
+            }
+        }
+    }
+
+    /** Whether <code>--incremental</code> can keep the data files of a group
+     * from the dump already in the directory, because its marker is the same
+     * and the files are all still there. If so, their entries are added to
+     * the manifest. Either way, the new marker is.
+     */
+    protected boolean dumpedBefore(Table rootTable) throws SQLException, IOException {
+        DumpManifest.GroupMarker marker;
+        if (pendingMarkers != null)
+            marker = await(pendingMarkers.get(rootTable));
+        else
+            marker = groupMarker(connection, rootTable);
+        String group = rootTable.schema + "." + rootTable.name;
+        manifest.setMarker(group, marker);
+        if (!isUnchanged(group, marker))
+            return false;
+        for (DumpManifest.Entry entry : previous.getEntries()) {
+            if (group.equals(entry.getGroup()) && isDataEntry(entry)) {
+                manifest.add(entry);
+            }
+        }
+        return true;
+    }
+
+    /** The same test as {@link #dumpedBefore}, before the group is dumped
+     * on another thread, once its marker has been read there.
+     */
+    protected boolean isUnchanged(Table rootTable) throws SQLException, IOException {
+        if (pendingMarkers == null)
+            return false;
+        return isUnchanged(rootTable.schema + "." + rootTable.name, await(pendingMarkers.get(rootTable)));
+    }
+
+    protected boolean isUnchanged(String group, DumpManifest.GroupMarker marker) {
+        if ((previous == null) || !marker.equals(previous.getMarker(group)))
+            return false;
+        // Nor if they were written in the other --data-format.
+        DumpManifest.Kind kind = (options.dataFormat == DumpClientOptions.DataFormat.CSV) ?
+            DumpManifest.Kind.CSV : DumpManifest.Kind.DATA;
+        for (DumpManifest.Entry entry : previous.getEntries()) {
+            if (group.equals(entry.getGroup()) && isDataEntry(entry) &&
+                ((entry.getKind() != kind) ||
+                 !new File(options.outputFile, entry.getFileName()).isFile())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static boolean isDataEntry(DumpManifest.Entry entry) {
+        return (entry.getKind() == DumpManifest.Kind.DATA) || (entry.getKind() == DumpManifest.Kind.CSV);
+    }
+
+    /** Read all the rows of a group, counting them and hashing their text.
+     * This still reads the whole group, but writes nothing, so when the
+     * group has not changed, none of it has to be written again. It is done
+     * before the group is dumped, so that a change made meanwhile is seen by
+     * the next dump.
+     */
+    protected DumpManifest.GroupMarker groupMarker(Connection conn, Table rootTable) throws SQLException, IOException {
+        List<Table> tables = new ArrayList<>();
+        groupTables(rootTable, tables);
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (java.security.NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        long rows = 0;
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        boolean success = false;
+        try {
+            for (Table table : tables) {
+                Statement stmt = conn.createStatement();
+                try {
+                    stmt.setFetchSize(CSV_FETCH_SIZE);
+                    // A group is always scanned in the same order.
+                    ResultSet rs = stmt.executeQuery("SELECT * FROM " + table.quotedSchema + "." + table.quotedName);
+                    int ncols = rs.getMetaData().getColumnCount();
+                    digest.update((table.schema + "." + table.name + "\n").getBytes("UTF-8"));
+                    while (rs.next()) {
+                        for (int i = 1; i <= ncols; i++) {
+                            String value = rs.getString(i);
+                            digest.update(((value == null) ? "\1" : value + "\0").getBytes("UTF-8"));
+                        }
+                        rows++;
+                    }
+                    rs.close();
+                }
+                finally {
+                    stmt.close();
+                }
+                conn.commit();
+            }
+            success = true;
+        }
+        finally {
+            if (!success)
+                conn.rollback();
+            conn.setAutoCommit(autoCommit);
+        }
+        StringBuilder checksum = new StringBuilder();
+        for (byte b : digest.digest()) {
+            checksum.append(String.format("%02x", b));
+        }
+        return new DumpManifest.GroupMarker(rows, checksum.toString());
+    }
+
+    protected class GroupMarkerRead implements Callable<DumpManifest.GroupMarker> {
+        private final Table rootTable;
+
+        public GroupMarkerRead(Table rootTable) {
+            this.rootTable = rootTable;
+        }
+
+        @Override
+        public DumpManifest.GroupMarker call() throws Exception {
+            Connection conn = dataConnections.take();
+            try {
+                return groupMarker(conn, rootTable);
+            }
+            finally {
+                dataConnections.add(conn);
+            }
+        }
+    }
+
+    /** Delete the files of the previous dump that the new one does not list,
+     * such as those of a group that was dumped again under another number.
+     */
+    protected void deleteStaleFiles() {
+        Set<String> fileNames = new HashSet<>();
+        for (DumpManifest.Entry entry : manifest.getEntries()) {
+            fileNames.add(entry.getFileName());
+        }
+        for (DumpManifest.Entry entry : previous.getEntries()) {
+            if (!fileNames.contains(entry.getFileName())) {
+                new File(options.outputFile, entry.getFileName()).delete();
+            }
+        }
+    }
+
+    /** Rows of a group whose root's primary key is at least <code>low</code>
+     * and less than <code>high</code>, with <code>null</code> for no limit.
+     */
+    protected static class KeyRange {
+        int number;
+        Object low, high;
+
+        public KeyRange(int number, Object low, Object high) {
+            this.number = number;
+            this.low = low;
+            this.high = high;
+        }
+    }
+
+    static final long MIN_RANGE_ROWS = CSV_FETCH_SIZE;
+
+    /** Cut a group into <code>--group-ranges</code> ranges of its root
+     * table's primary key, with about the same number of root rows in each,
+     * by reading the keys in order and taking every so many as a boundary.
+     * The key must be a single column, which all the children reference,
+     * and there must be enough rows to be worth it; otherwise the whole group
+     * is one range.
+     */
+    protected List<KeyRange> keyRanges(Table rootTable) throws SQLException {
+        List<KeyRange> ranges = new ArrayList<>();
+        if ((options.groupRanges > 1) && canSplitGroup(rootTable)) {
+            String key = rootTable.primaryKeys.get(0);
+            StringBuilder from = new StringBuilder(" FROM ");
+            from.append(rootTable.quotedSchema).append('.').append(rootTable.quotedName);
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            Statement stmt = connection.createStatement();
+            try {
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*)" + from);
+                rs.next();
+                long count = rs.getLong(1);
+                rs.close();
+                if (count >= options.groupRanges * MIN_RANGE_ROWS) {
+                    long step = count / options.groupRanges;
+                    stmt.setFetchSize(CSV_FETCH_SIZE);
+                    rs = stmt.executeQuery("SELECT " + key + from + " ORDER BY " + key);
+                    long n = 0;
+                    Object low = null;
+                    while (rs.next() && (ranges.size() < options.groupRanges - 1)) {
+                        if (++n % step == 0) {
+                            Object high = rs.getObject(1);
+                            ranges.add(new KeyRange(ranges.size() + 1, low, high));
+                            low = high;
+                        }
+                    }
+                    rs.close();
+                    ranges.add(new KeyRange(ranges.size() + 1, low, null));
+                }
+                connection.commit();
+            }
+            finally {
+                stmt.close();
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        if (ranges.isEmpty()) {
+            ranges.add(null);
+        }
+        return ranges;
+    }
+
+    protected boolean canSplitGroup(Table rootTable) {
+        if ((rootTable.primaryKeys == null) || (rootTable.primaryKeys.size() != 1))
+            return false;
+        for (Table child : rootTable.children) {
+            if (!rootTable.primaryKeys.equals(child.parentKeys))
+                return false;
+        }
+        return true;
+    }
+
+    protected class GroupCsvExport implements Callable<List<DumpManifest.Entry>> {
+        private final Table rootTable;
+        private final KeyRange range;
+
+        public GroupCsvExport(Table rootTable, KeyRange range) {
+            this.rootTable = rootTable;
+            this.range = range;
+        }
+
+        @Override
+        public List<DumpManifest.Entry> call() throws Exception {
+            if (isUnchanged(rootTable))
+                return Collections.emptyList();
+            Connection conn = dataConnections.take();
+            try {
+                return exportCsv(conn, rootTable, range);
+            }
+            finally {
+                dataConnections.add(conn);
+            }
+        }
+    }
+
+    /** Each table of the group, or just the rows in a range of it, read with a
+     * plain <code>SELECT</code> a batch of rows at a time, one transaction per table,
+     * or with <code>--consistent</code> one for them all.
+     */
+    protected List<DumpManifest.Entry> exportCsv(Connection conn, Table rootTable, KeyRange range) throws SQLException, IOException {
+        List<Table> tables = new ArrayList<>();
+        groupTables(rootTable, tables);
+        List<DumpManifest.Entry> entries = new ArrayList<>();
+        boolean autoCommit = conn.getAutoCommit();
+        // Only read a batch at a time outside of autocommit.
+        conn.setAutoCommit(false);
+        boolean success = false;
+        try {
+            String started = beginRead(conn);
+            for (Table table : tables) {
+                exportCsv(conn, rootTable, table, range, entries);
+                if (!options.consistent)
+                    conn.commit();
+            }
+            endRead(conn, rootTable, range, started);
+            success = true;
+        }
+        finally {
+            if (!success)
+                conn.rollback();
+            conn.setAutoCommit(autoCommit);
+        }
+        return entries;
+    }
+
+    protected void groupTables(Table parentTable, List<Table> tables) {
+        tables.add(parentTable);
+        for (Table child : parentTable.children) {
+            groupTables(child, tables);
+        }
+    }
+
+    /** One table into CSV files with a header line, each with at most
+     * <code>--csv-part-rows</code> rows, so they can be loaded on their own
+     * or all at once. Values are the server's text for them, <code>NULL</code>
+     * is an empty field and an empty string a quoted one.
+     */
+    protected void exportCsv(Connection conn, Table rootTable, Table table, KeyRange range,
+                             List<DumpManifest.Entry> entries) throws SQLException, IOException {
+        String group = rootTable.schema + "." + rootTable.name;
+        String fileName = groupFileName(rootTable) + "." + fileNameSafe(table.schema + "." + table.name);
+        if (range != null) {
+            fileName += String.format(".r%04d", range.number);
+        }
+        PreparedStatement stmt = conn.prepareStatement(exportCsvQuery(table, range));
+        Writer writer = null;
+        try {
+            stmt.setFetchSize(CSV_FETCH_SIZE);
+            if (range != null) {
+                int index = 1;
+                if (range.low != null)
+                    stmt.setObject(index++, range.low);
+                if (range.high != null)
+                    stmt.setObject(index++, range.high);
+            }
+            ResultSet rs = stmt.executeQuery();
+            int ncols = rs.getMetaData().getColumnCount();
+            StringBuilder header = new StringBuilder();
+            for (int i = 1; i <= ncols; i++) {
+                if (i > 1) header.append(',');
+                csvField(rs.getMetaData().getColumnName(i), header);
+            }
+            header.append(NL);
+            StringBuilder line = new StringBuilder();
+            long rows = 0;
+            int part = 0;
+            while (rs.next()) {
+                if (writer == null) {
+                    part++;
+                    String partName = fileName +
+                        ((options.csvPartRows > 0) ? String.format(".%04d.csv", part) : ".csv");
+                    writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(new File(options.outputFile, partName)), OUTPUT_BUFFER_SIZE), "UTF-8");
+                    writer.write(header.toString());
+                    entries.add(new DumpManifest.Entry(DumpManifest.Kind.CSV, group, partName,
+                                                       table.schema, table.name));
+                }
+                line.setLength(0);
+                for (int i = 1; i <= ncols; i++) {
+                    if (i > 1) line.append(',');
+                    String value = rs.getString(i);
+                    if (value != null)
+                        csvField(value, line);
+                }
+                line.append(NL);
+                writer.write(line.toString());
+                rows++;
+                if ((options.csvPartRows > 0) && (rows % options.csvPartRows == 0)) {
+                    writer.close();
+                    writer = null;
+                }
+            }
+            rs.close();
+        }
+        finally {
+            if (writer != null)
+                writer.close();
+            stmt.close();
+        }
+    }
+
+    /** A descendant's rows in a range are the ones whose ancestor just
+     * below the root, found by joining up through the grouping keys, has
+     * its grouping key in the range. Orphans, which have no such ancestor
+     * or key, go with the first range, so that no row is left out.
+     */
+    protected String exportCsvQuery(Table table, KeyRange range) {
+        StringBuilder sql = new StringBuilder("SELECT t0.* FROM ");
+        sql.append(table.quotedSchema).append('.').append(table.quotedName).append(" t0");
+        if (range == null) {
+            return sql.toString();
+        }
+        String rangeColumn;
+        if (table.parent == null) {
+            rangeColumn = "t0." + table.primaryKeys.get(0);
+        }
+        else {
+            Table child = table;
+            int depth = 0;
+            while (child.parent.parent != null) {
+                Table parent = child.parent;
+                sql.append(" LEFT OUTER JOIN ").append(parent.quotedSchema).append('.').append(parent.quotedName)
+                   .append(" t").append(depth + 1).append(" ON ");
+                for (int i = 0; i < child.childKeys.size(); i++) {
+                    if (i > 0) sql.append(" AND ");
+                    sql.append('t').append(depth).append('.').append(child.childKeys.get(i))
+                       .append(" = t").append(depth + 1).append('.').append(child.parentKeys.get(i));
+                }
+                child = parent;
+                depth++;
+            }
+            rangeColumn = "t" + depth + "." + child.childKeys.get(0);
+        }
+        if (range.low != null) {
+            sql.append(" WHERE ").append(rangeColumn).append(" >= ?");
+            if (range.high != null)
+                sql.append(" AND ").append(rangeColumn).append(" < ?");
+        }
+        else if (range.high != null) {
+            sql.append(" WHERE (").append(rangeColumn).append(" < ? OR ")
+               .append(rangeColumn).append(" IS NULL)");
+        }
+        return sql.toString();
+    }
+
+    /** With <code>--consistent</code>, start the transaction in which a group or
+     * range is read.
+     * @return the server's time at the start, or <code>null</code> if not consistent
+     */
+    protected String beginRead(Connection conn) throws SQLException {
+        if (!options.consistent)
+            return null;
+        conn.setAutoCommit(false);
+        return serverTime(conn);
+    }
+
+    /** Commit the transaction started by {@link #beginRead} and report it. */
+    protected void endRead(Connection conn, Table rootTable, KeyRange range, String started) throws SQLException {
+        if (!options.consistent)
+            return;
+        String finished = serverTime(conn);
+        conn.commit();
+        conn.setAutoCommit(true);
+        if (range == null)
+            readReport.add(rootTable.schema + "." + rootTable.name, 0, null, null, started, finished);
         else
-            output = new OutputStreamWriter(System.out);
+            readReport.add(rootTable.schema + "." + rootTable.name, range.number, range.low, range.high, started, finished);
+    }
+
+    protected void abortRead(Connection conn) {
+        if (!options.consistent)
+            return;
+        try {
+            conn.rollback();
+            conn.setAutoCommit(true);
+        }
+        catch (SQLException ex) {
+        }
+    }
+
+    protected static String serverTime(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT CURRENT_TIMESTAMP")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    protected static void csvField(String value, StringBuilder line) {
+        if (value.isEmpty() ||
+            (value.indexOf(',') >= 0) || (value.indexOf('"') >= 0) ||
+            (value.indexOf('\n') >= 0) || (value.indexOf('\r') >= 0)) {
+            line.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+        else {
+            line.append(value);
+        }
+    }
+
+    protected void openOutput() throws Exception {
+        if (options.consistent) {
+            if (options.commitFrequency != 0)
+                throw new Exception("--consistent reads each group in one transaction, so it cannot be used with --commit");
+            readReport = new ReadReport();
+        }
+        else if (options.readReport != null)
+            throw new Exception("--read-report is only for --consistent");
+        if ((options.dataFormat == DumpClientOptions.DataFormat.CSV) && dumpData && !options.directory)
+            throw new Exception("--data-format=csv writes a file for each table, so it needs --directory");
+        if (options.incremental && !options.directory)
+            throw new Exception("--incremental keeps the files of unchanged groups, so it needs --directory");
+        if (options.incremental && !dumpData)
+            throw new Exception("--incremental keeps the data of unchanged groups, so it cannot be used with --no-data");
+        if (options.directory) {
+            if (options.gzip)
+                throw new Exception("--gzip is only for a single output file, which fdbsqlload cannot read compressed anyway");
+            if (options.outputFile == null)
+                throw new Exception("--directory needs --output to name the directory");
+            if (!options.outputFile.isDirectory() && !options.outputFile.mkdirs())
+                throw new Exception("Cannot create directory " + options.outputFile);
+            manifest = new DumpManifest();
+            if (options.incremental && DumpManifest.isDumpDirectory(options.outputFile)) {
+                previous = DumpManifest.read(options.outputFile);
+            }
+            DumpManifest.delete(options.outputFile);
+            openOutputFile(DumpManifest.Kind.DDL, DumpManifest.NO_GROUP, "schema.sql");
+        }
+        else {
+            OutputStream ostr = (options.outputFile != null) ? new FileOutputStream(options.outputFile) : System.out;
+            if (options.gzip) {
+                int nthreads = (options.gzipThreads > 0) ? options.gzipThreads : Runtime.getRuntime().availableProcessors();
+                ostr = new ParallelGzipOutputStream(ostr, nthreads);
+            }
+            else {
+                ostr = new BufferedOutputStream(ostr, OUTPUT_BUFFER_SIZE);
+            }
+            openOutput(ostr);
+        }
+    }
+
+    /** The DDL is written as text to <code>output</code>, but the data goes
+     * straight to the bytes under it.
+     */
+    protected void openOutput(OutputStream ostr) throws IOException {
+        outputBytes = ostr;
+        output = new OutputStreamWriter(ostr, "UTF-8");
+    }
+
+    /** Switch the output of a directory format dump to a new file. */
+    protected void openOutputFile(DumpManifest.Kind kind, String group, String fileName) throws IOException {
+        if (output != null)
+            output.close();
+        openOutput(new BufferedOutputStream(new FileOutputStream(new File(options.outputFile, fileName)), OUTPUT_BUFFER_SIZE));
+        manifest.add(kind, group, fileName);
     }
 
     protected void openConnection() throws Exception {
@@ -1131,8 +1991,52 @@ public class DumpClient
             copyManager = new CopyManager((com.foundationdb.sql.jdbc.core.BaseConnection)connection);
     }
 
+    protected Connection openDataConnection() throws SQLException {
+        String url = options.getURL((defaultSchema != null) ? defaultSchema : "information_schema");
+        Connection conn = DriverManager.getConnection(url, options.user, options.password);
+        if (options.commitFrequency == DumpClientOptions.COMMIT_AUTO) {
+            StatementHelper helper = new StatementHelper(conn);
+            helper.executeQuery("SET transactionPeriodicallyCommit TO 'true'");
+            helper.close();
+        }
+        return conn;
+    }
+
     protected void close() {
-        stmtHelper.close();
+        if (dataPool != null) {
+            dataPool.shutdownNow();
+            try {
+                dataPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ex) {
+            }
+            dataPool = null;
+        }
+        if (pendingData != null) {
+            // Only left if something failed.
+            for (Future<File> data : pendingData.values()) {
+                try {
+                    data.get().delete();
+                }
+                catch (Exception ex) {
+                }
+            }
+            pendingData = null;
+        }
+        if (dataConnections != null) {
+            for (Connection conn : dataConnections) {
+                try {
+                    conn.close();
+                }
+                catch (SQLException ex) {
+                }
+            }
+            dataConnections = null;
+        }
+        if (stmtHelper != null) {
+            stmtHelper.close();
+            stmtHelper = null;
+        }
         if (output != null) {
             try {
                 output.close();
@@ -1140,6 +2044,7 @@ public class DumpClient
             catch (IOException ex) {
             }
             output = null;
+            outputBytes = null;
         }
         if (connection != null) {
             try {
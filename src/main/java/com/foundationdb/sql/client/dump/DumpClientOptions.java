@@ -28,6 +28,41 @@ public class DumpClientOptions extends ClientOptionsBase
     public static final int DEFAULT_INSERT_MAX_ROW_COUNT = 100;
     public static final int COMMIT_AUTO = -1;
 
+    public enum DataFormat {
+        SQL("sql"), CSV("csv");
+
+        final String name;
+        DataFormat(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+        public static DataFormat fromName(String name) {
+            for (DataFormat format : values()) {
+                if (name.equalsIgnoreCase(format.name)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unknown data format: " + name);
+        }
+    }
+
+    public static class DataFormatConverter extends BaseConverter<DataFormat>
+    {
+        public DataFormatConverter(String optionName) {
+            super(optionName);
+        }
+
+        @Override
+        public DataFormat convert(String value) {
+            return DataFormat.fromName(value);
+        }
+    }
+
     public static class CommitConverter extends BaseConverter<Long>
     {
         public CommitConverter(String optionName) {
@@ -67,12 +102,45 @@ public class DumpClientOptions extends ClientOptionsBase
     @Parameter(names = { "-o", "--output" }, description = "name of output file")
     public File outputFile;
 
+    @Parameter(names = "--directory", description = "write the --output directory, with a manifest and separate files for each group")
+    public boolean directory;
+
+    @Parameter(names = "--data-format", description = "how to write the data: sql (INSERTs) or csv (a file for each table, needs --directory)", converter = DataFormatConverter.class)
+    public DataFormat dataFormat = DataFormat.SQL;
+
+    @Parameter(names = "--csv-part-rows", description = "with --data-format=csv, start a new file after this many rows")
+    public long csvPartRows;
+
+    @Parameter(names = "--group-ranges", description = "with --data-format=csv, cut each big group into this many primary key ranges, dumped on separate --threads")
+    public int groupRanges = 1;
+
+    @Parameter(names = "--incremental", description = "with --directory, keep the data files of groups unchanged since the dump already there")
+    public boolean incremental;
+
+    @Parameter(names = { "-z", "--gzip" }, description = "gzip the output")
+    public boolean gzip;
+
+    @Parameter(names = "--gzip-threads", description = "number of threads compressing with --gzip (default all processors)")
+    public int gzipThreads;
+
     @Parameter(names = "--insert-max-rows", description = "number of rows per INSERT statement")
     public int insertMaxRowCount = DEFAULT_INSERT_MAX_ROW_COUNT;
 
     @Parameter(names = { "-c", "--commit" }, description = "commit every n rows", converter = CommitConverter.class)
     public Long commitFrequency;
 
+    @Parameter(names = "--consistent", description = "read each group, or each --group-ranges range, in a single transaction")
+    public boolean consistent;
+
+    @Parameter(names = "--read-report", description = "with --consistent, file in which to list when each group or range was read")
+    public File readReport;
+
+    @Parameter(names = { "-n", "--threads" }, description = "number of groups whose data is dumped at once, each on its own connection")
+    public int nthreads = 1;
+
+    @Parameter(names = "--catalog-cache", description = "file in which to keep the catalog, to be used again while the server's schema is unchanged")
+    public File catalogCache;
+
     @Parameter(description = "[schema(s)]")
     public List<String> schemas = new ArrayList<>();
 }
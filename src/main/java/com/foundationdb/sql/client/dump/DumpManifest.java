@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.dump;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The table of contents of a directory format dump: which file holds what,
+ * in the order the files were written.
+ * Each line of the <code>manifest</code> file is a kind, a group and a file
+ * name, separated by tabs, with <code>-</code> as the group for files that
+ * belong to the whole dump rather than to one group. CSV files also give
+ * the schema and name of their table.
+ * The DDL files have to be loaded in order, then all the data files, in any
+ * order or at once, and then the after data files in order.
+ * An <code>--incremental</code> dump also has a <code>marker</code> line
+ * for each group, with its number of rows and a checksum of them.
+ */
+public class DumpManifest
+{
+    public static final String FILE_NAME = "manifest";
+    public static final String HEADER = "# fdbsqldump directory 1";
+    public static final String NO_GROUP = "-";
+    public static final String MARKER = "marker";
+
+    public enum Kind {
+        DDL("ddl"), DATA("data"), CSV("csv"), AFTER("after");
+
+        final String name;
+        Kind(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+        public static Kind fromName(String name) {
+            for (Kind kind : values()) {
+                if (name.equals(kind.name)) {
+                    return kind;
+                }
+            }
+            throw new IllegalArgumentException("Unknown manifest entry: " + name);
+        }
+    }
+
+    public static class Entry {
+        private final Kind kind;
+        private final String group;
+        private final String fileName;
+        private final String schema, table;
+
+        public Entry(Kind kind, String group, String fileName) {
+            this(kind, group, fileName, null, null);
+        }
+
+        public Entry(Kind kind, String group, String fileName, String schema, String table) {
+            this.kind = kind;
+            this.group = group;
+            this.fileName = fileName;
+            this.schema = schema;
+            this.table = table;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /** <code>schema.table</code> of the group's root table, or {@link #NO_GROUP}. */
+        public String getGroup() {
+            return group;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        /** The schema of the table whose rows are in a CSV file. */
+        public String getSchema() {
+            return schema;
+        }
+
+        /** The table whose rows are in a CSV file. */
+        public String getTable() {
+            return table;
+        }
+    }
+
+    /** What a group's data was when it was dumped. */
+    public static class GroupMarker {
+        private final long rows;
+        private final String checksum;
+
+        public GroupMarker(long rows, String checksum) {
+            this.rows = rows;
+            this.checksum = checksum;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof GroupMarker))
+                return false;
+            GroupMarker other = (GroupMarker)obj;
+            return (rows == other.rows) && checksum.equals(other.checksum);
+        }
+
+        @Override
+        public int hashCode() {
+            return checksum.hashCode();
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String,GroupMarker> markers = new LinkedHashMap<>();
+
+    public void add(Kind kind, String group, String fileName) {
+        entries.add(new Entry(kind, group, fileName));
+    }
+
+    public void add(Entry entry) {
+        entries.add(entry);
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /** The entries of the given kind, in order. */
+    public List<Entry> getEntries(Kind kind) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.kind == kind) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    public void setMarker(String group, GroupMarker marker) {
+        markers.put(group, marker);
+    }
+
+    /** @return the marker of the group, or <code>null</code> if it has none */
+    public GroupMarker getMarker(String group) {
+        return markers.get(group);
+    }
+
+    public static boolean isDumpDirectory(File dir) {
+        return new File(dir, FILE_NAME).isFile();
+    }
+
+    /** Write to a new file and then replace, so that there is never part of one. */
+    public void write(File dir) throws IOException {
+        File file = new File(dir, FILE_NAME);
+        File tmpFile = new File(dir, FILE_NAME + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8")) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Entry entry : entries) {
+                writer.write(entry.kind.name);
+                writer.write('\t');
+                writer.write(entry.group);
+                writer.write('\t');
+                writer.write(entry.fileName);
+                if (entry.table != null) {
+                    writer.write('\t');
+                    writer.write(entry.schema);
+                    writer.write('\t');
+                    writer.write(entry.table);
+                }
+                writer.write('\n');
+            }
+            for (Map.Entry<String,GroupMarker> entry : markers.entrySet()) {
+                writer.write(MARKER);
+                writer.write('\t');
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(Long.toString(entry.getValue().rows));
+                writer.write('\t');
+                writer.write(entry.getValue().checksum);
+                writer.write('\n');
+            }
+        }
+        if (!tmpFile.renameTo(file)) {
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Cannot replace " + file);
+            }
+        }
+    }
+
+    /** Remove the manifest before the files it lists are written again, so
+     * that a dump that does not finish does not look like a complete one.
+     */
+    public static void delete(File dir) throws IOException {
+        File file = new File(dir, FILE_NAME);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+
+    public static DumpManifest read(File dir) throws IOException {
+        DumpManifest manifest = new DumpManifest();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(dir, FILE_NAME)), "UTF-8"))) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException(dir + " does not have a dump manifest");
+            }
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t", 5);
+                if (MARKER.equals(fields[0]) && (fields.length == 4)) {
+                    try {
+                        manifest.setMarker(fields[1], new GroupMarker(Long.parseLong(fields[2]), fields[3]));
+                    }
+                    catch (NumberFormatException ex) {
+                        throw new IOException("Bad manifest line: " + line);
+                    }
+                }
+                else if (fields.length == 3) {
+                    manifest.add(Kind.fromName(fields[0]), fields[1], fields[2]);
+                }
+                else if (fields.length == 5) {
+                    manifest.add(new Entry(Kind.fromName(fields[0]), fields[1], fields[2], fields[3], fields[4]));
+                }
+                else {
+                    throw new IOException("Bad manifest line: " + line);
+                }
+            }
+        }
+        return manifest;
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.dump;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compression on several threads at once, by cutting the output into
+ * blocks and compressing each into a gzip member of its own, written in
+ * order. A file of several members is still a gzip file: <code>gunzip</code>
+ * and <code>GZIPInputStream</code> read them one after another.
+ * {@link #flush} only writes the blocks already compressed; a partly filled
+ * block waits for more output or for {@link #close}.
+ */
+class ParallelGzipOutputStream extends OutputStream
+{
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private final OutputStream out;
+    private final ExecutorService pool;
+    private final int maxPending;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    /** The blocks being compressed, in the same order, and then ones to fill again. */
+    private final Deque<byte[]> pendingBlocks = new ArrayDeque<>(), freeBlocks = new ArrayDeque<>();
+    private byte[] block;
+    private int blockLength;
+    private boolean submitted, closed;
+
+    public ParallelGzipOutputStream(OutputStream out, int nthreads) {
+        this(out, nthreads, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ParallelGzipOutputStream(OutputStream out, int nthreads, int blockSize) {
+        this.out = out;
+        this.pool = Executors.newFixedThreadPool(nthreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "gzip");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        // Enough to keep every thread busy while the oldest is written.
+        this.maxPending = nthreads * 2;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (blockLength == block.length) {
+            submitBlock();
+        }
+        block[blockLength++] = (byte)b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (blockLength == block.length) {
+                submitBlock();
+            }
+            int n = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+            writeFirst();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if ((blockLength > 0) || !submitted) {
+                // Even with no output, the result should be a gzip file.
+                submitBlock();
+            }
+            while (!pending.isEmpty()) {
+                writeFirst();
+            }
+        }
+        finally {
+            pool.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        while (pending.size() >= maxPending) {
+            writeFirst();
+        }
+        final byte[] bytes = block;
+        final int length = blockLength;
+        pending.addLast(pool.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+                    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                        gzip.write(bytes, 0, length);
+                    }
+                    return compressed.toByteArray();
+                }
+            }));
+        pendingBlocks.addLast(bytes);
+        submitted = true;
+        block = freeBlocks.isEmpty() ? new byte[bytes.length] : freeBlocks.removeFirst();
+        blockLength = 0;
+    }
+
+    private void writeFirst() throws IOException {
+        byte[] compressed;
+        try {
+            compressed = pending.removeFirst().get();
+            freeBlocks.addLast(pendingBlocks.removeFirst());
+        }
+        catch (InterruptedException ex) {
+            throw new IOException(ex);
+        }
+        catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            throw new IOException(cause);
+        }
+        out.write(compressed);
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.dump;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * When each group, or each range of one, was read by a <code>--consistent</code>
+ * dump, for which it was read in a single transaction. Each line is the group,
+ * the range number (0 for the whole group), its low and high keys (empty for
+ * no limit) and the server's time when the transaction started and when it
+ * was about to commit, separated by tabs. Rows read in the same transaction
+ * are consistent with each other; rows from different lines are only as
+ * consistent as their times are close together.
+ */
+class ReadReport
+{
+    public static final String HEADER = "# group\trange\tlow\thigh\tstarted\tfinished";
+
+    static class Read {
+        final String group;
+        final int range;
+        final Object low, high;
+        final String started, finished;
+
+        Read(String group, int range, Object low, Object high, String started, String finished) {
+            this.group = group;
+            this.range = range;
+            this.low = low;
+            this.high = high;
+            this.started = started;
+            this.finished = finished;
+        }
+    }
+
+    private final List<Read> reads = new ArrayList<>();
+
+    /** Called from the dump threads as they each finish a read. */
+    public synchronized void add(String group, int range, Object low, Object high, String started, String finished) {
+        reads.add(new Read(group, range, low, high, started, finished));
+    }
+
+    /** The reads by group and range, rather than in the order they finished. */
+    public synchronized List<Read> getReads() {
+        List<Read> result = new ArrayList<>(reads);
+        Collections.sort(result, new Comparator<Read>() {
+                @Override
+                public int compare(Read r1, Read r2) {
+                    int cmp = r1.group.compareTo(r2.group);
+                    if (cmp == 0)
+                        cmp = Integer.compare(r1.range, r2.range);
+                    return cmp;
+                }
+            });
+        return result;
+    }
+
+    public void write(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Read read : getReads()) {
+                writer.write(read.group);
+                writer.write('\t');
+                writer.write(Integer.toString(read.range));
+                writer.write('\t');
+                if (read.low != null)
+                    writer.write(read.low.toString());
+                writer.write('\t');
+                if (read.high != null)
+                    writer.write(read.high.toString());
+                writer.write('\t');
+                writer.write(read.started);
+                writer.write('\t');
+                writer.write(read.finished);
+                writer.write('\n');
+            }
+        }
+    }
+}
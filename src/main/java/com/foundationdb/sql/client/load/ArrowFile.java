@@ -0,0 +1,636 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * An Apache Arrow IPC file (also known as Feather version 2), read
+ * without the Arrow libraries. The file ends with a footer that gives the
+ * schema and where each record batch is, so batches can be read in any
+ * order, by any thread. The metadata is in FlatBuffers, of which only
+ * the little needed here is decoded.
+ *
+ * Only flat schemas of plain types are handled: no dictionaries, nested
+ * types or compressed bodies.
+ */
+class ArrowFile
+{
+    static final byte[] MAGIC = { 'A', 'R', 'R', 'O', 'W', '1' };
+
+    // Type union.
+    static final int NULL = 1, INT = 2, FLOATING_POINT = 3, BINARY = 4, UTF8 = 5,
+        BOOL = 6, DECIMAL = 7, DATE = 8, TIME = 9, TIMESTAMP = 10,
+        FIXED_SIZE_BINARY = 15, LARGE_BINARY = 19, LARGE_UTF8 = 20;
+    static final String[] TYPE_NAMES = {
+        "NONE", "Null", "Int", "FloatingPoint", "Binary", "Utf8", "Bool",
+        "Decimal", "Date", "Time", "Timestamp", "Interval", "List", "Struct",
+        "Union", "FixedSizeBinary", "FixedSizeList", "Map", "Duration",
+        "LargeBinary", "LargeUtf8", "LargeList", "RunEndEncoded",
+        "BinaryView", "Utf8View", "ListView", "LargeListView"
+    };
+    // MessageHeader union.
+    static final int RECORD_BATCH = 3;
+    // Units of Date, Time and Timestamp.
+    static final int DAY = 0, SECOND = 0, MILLISECOND = 1, MICROSECOND = 2, NANOSECOND = 3;
+    static final int HALF = 0, SINGLE = 1, DOUBLE = 2;
+
+    private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
+    private static final int FOOTER_TRAILER = 4 + 6;
+    private static final int BLOCK_SIZE = 24, FIELD_NODE_SIZE = 16, BUFFER_SIZE = 16;
+
+    private final FileChannel channel;
+    private final List<Column> columns = new ArrayList<>();
+    private final List<String> unsupported = new ArrayList<>();
+    /** <code>offset, metaDataLength, bodyLength</code> of each record batch. */
+    private final long[] blocks;
+
+    public ArrowFile(FileChannel channel) throws IOException, LineReader.ParseException {
+        this.channel = channel;
+        long size = channel.size();
+        if ((size < 2 * 8 + FOOTER_TRAILER) || !hasMagic(read(0, MAGIC.length), 0)) {
+            throw new LineReader.ParseException("Not an Arrow IPC file");
+        }
+        ByteBuffer trailer = read(size - FOOTER_TRAILER, FOOTER_TRAILER);
+        int footerLength = trailer.getInt(0);
+        if (!hasMagic(trailer, 4) || (footerLength <= 0) || (footerLength > size - 8 - FOOTER_TRAILER)) {
+            throw new LineReader.ParseException("Arrow file footer is missing or truncated");
+        }
+        try {
+            Table footer = Table.root(read(size - FOOTER_TRAILER - footerLength, footerLength));
+            Table schema = footer.table(1);
+            if (schema == null) {
+                throw new LineReader.ParseException("Arrow file footer has no schema");
+            }
+            if (schema.getShort(0, 0) != 0) {
+                unsupported.add("big endian data");
+            }
+            int nfields = schema.vectorLength(1);
+            for (int i = 0; i < nfields; i++) {
+                Column column = new Column(schema.vectorTable(1, i));
+                if (column.unsupported != null) {
+                    unsupported.add(column.name + " " + column.unsupported);
+                }
+                columns.add(column);
+            }
+            if (footer.vectorLength(2) > 0) {
+                unsupported.add("dictionary batches");
+            }
+            int nbatches = footer.vectorLength(3);
+            blocks = new long[3 * nbatches];
+            for (int i = 0; i < nbatches; i++) {
+                int block = footer.vectorStruct(3, i, BLOCK_SIZE);
+                blocks[3 * i] = footer.bb.getLong(block);
+                blocks[3 * i + 1] = footer.bb.getInt(block + 8);
+                blocks[3 * i + 2] = footer.bb.getLong(block + 16);
+            }
+        }
+        catch (IndexOutOfBoundsException ex) {
+            throw new LineReader.ParseException("Arrow file footer is corrupt");
+        }
+    }
+
+    private static boolean hasMagic(ByteBuffer bb, int position) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bb.get(position + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ByteBuffer read(long position, long length) throws IOException, LineReader.ParseException {
+        if ((length < 0) || (length > Integer.MAX_VALUE) || (position + length > channel.size())) {
+            throw new LineReader.ParseException("Arrow file is truncated at " + position);
+        }
+        ByteBuffer bb = ByteBuffer.allocate((int)length);
+        while (bb.hasRemaining()) {
+            if (channel.read(bb, position + bb.position()) < 0) {
+                throw new LineReader.ParseException("Arrow file is truncated at " + position);
+            }
+        }
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        return bb;
+    }
+
+    public List<Column> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    public List<String> getColumnNames() {
+        List<String> names = new ArrayList<>(columns.size());
+        for (Column column : columns) {
+            names.add(column.name);
+        }
+        return names;
+    }
+
+    /** The columns or features that cannot be loaded, empty if none. */
+    public List<String> getUnsupported() {
+        return unsupported;
+    }
+
+    public int getBatchCount() {
+        return blocks.length / 3;
+    }
+
+    public long getBatchBodyLength(int index) {
+        return blocks[3 * index + 2];
+    }
+
+    /** The number of rows in the <code>index</code>'th batch, from its metadata only. */
+    public long getBatchLength(int index) throws IOException, LineReader.ParseException {
+        try {
+            return readBatchMessage(index).getLong(0, 0);
+        }
+        catch (IndexOutOfBoundsException ex) {
+            throw new LineReader.ParseException("Arrow record batch " + index + " is corrupt");
+        }
+    }
+
+    private Table readBatchMessage(int index) throws IOException, LineReader.ParseException {
+        ByteBuffer metadata = read(blocks[3 * index], blocks[3 * index + 1]);
+        // Since format 0.15, the length is preceded by a continuation marker.
+        int start = (metadata.getInt(0) == -1) ? 8 : 4;
+        metadata.position(start);
+        Table message = Table.root(metadata.slice().order(ByteOrder.LITTLE_ENDIAN));
+        if ((message.getByte(1, 0) != RECORD_BATCH) || (message.table(2) == null)) {
+            throw new LineReader.ParseException("Arrow block " + index + " is not a record batch");
+        }
+        return message.table(2);
+    }
+
+    /** Read the metadata and the whole body of the <code>index</code>'th batch. */
+    public Batch readBatch(int index) throws IOException, LineReader.ParseException {
+        try {
+            Table recordBatch = readBatchMessage(index);
+            if (recordBatch.table(3) != null) {
+                throw new LineReader.ParseException("Compressed Arrow record batches are not supported");
+            }
+            ByteBuffer body = read(blocks[3 * index] + blocks[3 * index + 1], blocks[3 * index + 2]);
+            return new Batch(recordBatch, body);
+        }
+        catch (IndexOutOfBoundsException ex) {
+            throw new LineReader.ParseException("Arrow record batch " + index + " is corrupt");
+        }
+    }
+
+    /** A field of the schema and how to decode its values. */
+    static class Column {
+        final String name;
+        final int type;
+        final int bitWidth, precision, scale, unit;
+        final boolean signed;
+        final TimeZone timeZone;
+        final String unsupported;
+
+        Column(Table field) {
+            name = field.getString(0);
+            type = field.getByte(2, 0);
+            Table params = field.table(3);
+            int bitWidth = 0, precision = 0, scale = 0, unit = 0;
+            boolean signed = false;
+            String timeZone = null;
+            String unsupported = null;
+            switch ((params == null) ? NULL : type) {
+            case NULL:
+                if ((type != NULL) && (bufferCount() != 3) && (type != BOOL)) {
+                    unsupported = "has no type parameters";
+                }
+                break;
+            case BINARY:
+            case UTF8:
+            case BOOL:
+            case LARGE_BINARY:
+            case LARGE_UTF8:
+                break;
+            case INT:
+                bitWidth = params.getInt(0, 0);
+                signed = params.getByte(1, 0) != 0;
+                if ((bitWidth != 8) && (bitWidth != 16) && (bitWidth != 32) && (bitWidth != 64)) {
+                    unsupported = "has an integer width of " + bitWidth;
+                }
+                break;
+            case FLOATING_POINT:
+                precision = params.getShort(0, HALF);
+                if (precision == HALF) {
+                    unsupported = "has half precision floats";
+                }
+                bitWidth = (precision == SINGLE) ? 32 : 64;
+                break;
+            case DECIMAL:
+                precision = params.getInt(0, 0);
+                scale = params.getInt(1, 0);
+                bitWidth = params.getInt(2, 128);
+                break;
+            case DATE:
+                unit = params.getShort(0, MILLISECOND);
+                bitWidth = (unit == DAY) ? 32 : 64;
+                break;
+            case TIME:
+                unit = params.getShort(0, MILLISECOND);
+                bitWidth = params.getInt(1, 32);
+                break;
+            case TIMESTAMP:
+                unit = params.getShort(0, SECOND);
+                timeZone = params.getString(1);
+                bitWidth = 64;
+                break;
+            case FIXED_SIZE_BINARY:
+                bitWidth = params.getInt(0, 0) * 8;
+                break;
+            default:
+                unsupported = "has type " + ((type < TYPE_NAMES.length) ? TYPE_NAMES[type] : type);
+            }
+            if ((unsupported == null) && (field.table(4) != null)) {
+                unsupported = "is dictionary encoded";
+            }
+            this.bitWidth = bitWidth;
+            this.precision = precision;
+            this.scale = scale;
+            this.unit = unit;
+            this.signed = signed;
+            this.timeZone = (timeZone == null) ? null : zone(timeZone);
+            this.unsupported = unsupported;
+        }
+
+        /** Arrow allows an offset such as <code>+01:00</code> as well as a zone name. */
+        private static TimeZone zone(String name) {
+            if (name.startsWith("+") || name.startsWith("-")) {
+                name = "GMT" + name;
+            }
+            return TimeZone.getTimeZone(name);
+        }
+
+        /** The number of buffers in a record batch for each column of this type. */
+        int bufferCount() {
+            switch (type) {
+            case NULL:
+                return 0;
+            case BINARY:
+            case UTF8:
+            case LARGE_BINARY:
+            case LARGE_UTF8:
+                return 3;
+            default:
+                return 2;
+            }
+        }
+    }
+
+    /** One record batch, with its whole body in memory. */
+    class Batch {
+        private final long length;
+        private final ByteBuffer body;
+        /** For each column, its null count and the body position and
+         * length of each of its buffers, three at most.
+         */
+        private final long[] nullCounts;
+        private final int[] buffers;
+
+        Batch(Table recordBatch, ByteBuffer body) throws LineReader.ParseException {
+            this.length = recordBatch.getLong(0, 0);
+            this.body = body;
+            int ncolumns = columns.size();
+            if (recordBatch.vectorLength(1) != ncolumns) {
+                throw new LineReader.ParseException("Arrow record batch has " + recordBatch.vectorLength(1) +
+                                                    " columns, but the schema has " + ncolumns);
+            }
+            nullCounts = new long[ncolumns];
+            buffers = new int[ncolumns * 6];
+            int nbuffers = recordBatch.vectorLength(2);
+            int buffer = 0;
+            for (int i = 0; i < ncolumns; i++) {
+                int node = recordBatch.vectorStruct(1, i, FIELD_NODE_SIZE);
+                if (recordBatch.bb.getLong(node) != length) {
+                    throw new LineReader.ParseException("Arrow column " + columns.get(i).name + " has " +
+                                                        recordBatch.bb.getLong(node) + " rows, not " + length);
+                }
+                nullCounts[i] = recordBatch.bb.getLong(node + 8);
+                int count = columns.get(i).bufferCount();
+                if (buffer + count > nbuffers) {
+                    throw new LineReader.ParseException("Arrow record batch has too few buffers");
+                }
+                for (int j = 0; j < count; j++, buffer++) {
+                    int position = recordBatch.vectorStruct(2, buffer, BUFFER_SIZE);
+                    long offset = recordBatch.bb.getLong(position);
+                    long size = recordBatch.bb.getLong(position + 8);
+                    if ((offset < 0) || (size < 0) || (offset + size > body.capacity())) {
+                        throw new LineReader.ParseException("Arrow buffer is outside its record batch");
+                    }
+                    buffers[i * 6 + j * 2] = (int)offset;
+                    buffers[i * 6 + j * 2 + 1] = (int)size;
+                }
+            }
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /** The value of <code>column</code> in <code>row</code>: a
+         * <code>Boolean</code>, <code>Integer</code>, <code>Long</code>,
+         * <code>Float</code>, <code>Double</code>, <code>BigDecimal</code>,
+         * <code>byte[]</code> or <code>String</code>. Dates and times are
+         * given as text, so that no time zone of the JVM gets applied to them.
+         */
+        public Object get(int column, int row) {
+            Column c = columns.get(column);
+            if (c.type == NULL) {
+                return null;
+            }
+            int validity = buffers[column * 6], data = buffers[column * 6 + 2];
+            if ((nullCounts[column] > 0) && (buffers[column * 6 + 1] > 0) && !bit(validity, row)) {
+                return null;
+            }
+            switch (c.type) {
+            case BOOL:
+                return bit(data, row);
+            case INT:
+                return integer(c, fixed(data, c.bitWidth, row));
+            case FLOATING_POINT:
+                if (c.precision == SINGLE) {
+                    return body.getFloat(data + row * 4);
+                }
+                return body.getDouble(data + row * 8);
+            case DECIMAL:
+                {
+                    int width = c.bitWidth / 8;
+                    byte[] bytes = new byte[width];
+                    for (int i = 0; i < width; i++) {
+                        bytes[width - 1 - i] = body.get(data + row * width + i);
+                    }
+                    return new BigDecimal(new BigInteger(bytes), c.scale);
+                }
+            case DATE:
+                if (c.unit == DAY) {
+                    return formatDate(new StringBuilder(), body.getInt(data + row * 4)).toString();
+                }
+                return formatDateTime(floorDiv(body.getLong(data + row * 8), 1000), 0, false);
+            case TIME:
+                return formatTime(new StringBuilder(), fixed(data, c.bitWidth, row), c.unit).toString();
+            case TIMESTAMP:
+                return formatTimestamp(c, body.getLong(data + row * 8));
+            case FIXED_SIZE_BINARY:
+                {
+                    byte[] bytes = new byte[c.bitWidth / 8];
+                    body.position(data + row * bytes.length);
+                    body.get(bytes);
+                    return bytes;
+                }
+            default:
+                {
+                    boolean large = (c.type == LARGE_BINARY) || (c.type == LARGE_UTF8);
+                    long start = large ? body.getLong(data + row * 8) : body.getInt(data + row * 4);
+                    long end = large ? body.getLong(data + row * 8 + 8) : body.getInt(data + row * 4 + 4);
+                    int values = buffers[column * 6 + 4];
+                    if ((start < 0) || (end < start) || (end > buffers[column * 6 + 5])) {
+                        throw new IndexOutOfBoundsException("Arrow value offsets out of range: " + start + ", " + end);
+                    }
+                    byte[] bytes = new byte[(int)(end - start)];
+                    body.position(values + (int)start);
+                    body.get(bytes);
+                    if ((c.type == UTF8) || (c.type == LARGE_UTF8)) {
+                        return new String(bytes, UTF8_CHARSET);
+                    }
+                    return bytes;
+                }
+            }
+        }
+
+        private boolean bit(int buffer, int row) {
+            return (body.get(buffer + (row >>> 3)) & (1 << (row & 7))) != 0;
+        }
+
+        /** A signed value of the given width, to be reinterpreted if unsigned. */
+        private long fixed(int buffer, int bitWidth, int row) {
+            switch (bitWidth) {
+            case 8:
+                return body.get(buffer + row);
+            case 16:
+                return body.getShort(buffer + row * 2);
+            case 32:
+                return body.getInt(buffer + row * 4);
+            default:
+                return body.getLong(buffer + row * 8);
+            }
+        }
+    }
+
+    private static Object integer(Column c, long value) {
+        if (!c.signed) {
+            switch (c.bitWidth) {
+            case 8:
+                return (int)(value & 0xFF);
+            case 16:
+                return (int)(value & 0xFFFF);
+            case 32:
+                return value & 0xFFFFFFFFL;
+            default:
+                if (value < 0) {
+                    return new BigDecimal(new BigInteger(1, ByteBuffer.allocate(8).putLong(value).array()));
+                }
+                return value;
+            }
+        }
+        if (c.bitWidth == 64) {
+            return value;
+        }
+        return (int)value;
+    }
+
+    private static String formatTimestamp(Column c, long value) {
+        long perSecond = unitsPerSecond(c.unit);
+        long seconds = floorDiv(value, perSecond);
+        long nanos = (value - seconds * perSecond) * (1000000000L / perSecond);
+        if (c.timeZone != null) {
+            // A time zone means the value is UTC, to be shown as the wall time there.
+            seconds += c.timeZone.getOffset(seconds * 1000) / 1000;
+        }
+        return formatDateTime(seconds, nanos, true);
+    }
+
+    private static String formatDateTime(long seconds, long nanos, boolean withTime) {
+        StringBuilder sb = new StringBuilder();
+        long days = floorDiv(seconds, 86400);
+        formatDate(sb, days);
+        if (withTime) {
+            sb.append(' ');
+            formatTime(sb, (seconds - days * 86400) * 1000000000L + nanos, NANOSECOND);
+        }
+        return sb.toString();
+    }
+
+    /** The civil date of a day count from 1970-01-01, by the proleptic Gregorian calendar. */
+    static StringBuilder formatDate(StringBuilder sb, long days) {
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long day = doy - (153 * mp + 2) / 5 + 1;
+        long month = (mp < 10) ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + ((month <= 2) ? 1 : 0);
+        pad(sb, year, 4).append('-');
+        pad(sb, month, 2).append('-');
+        return pad(sb, day, 2);
+    }
+
+    static StringBuilder formatTime(StringBuilder sb, long value, int unit) {
+        long perSecond = unitsPerSecond(unit);
+        long seconds = floorDiv(value, perSecond);
+        long fraction = value - seconds * perSecond;
+        pad(sb, seconds / 3600, 2).append(':');
+        pad(sb, seconds / 60 % 60, 2).append(':');
+        pad(sb, seconds % 60, 2);
+        if (fraction != 0) {
+            int digits = 3 * unit;
+            sb.append('.');
+            pad(sb, fraction, digits);
+            while (sb.charAt(sb.length() - 1) == '0') {
+                sb.setLength(sb.length() - 1);
+            }
+        }
+        return sb;
+    }
+
+    private static long unitsPerSecond(int unit) {
+        switch (unit) {
+        case SECOND:
+            return 1;
+        case MILLISECOND:
+            return 1000;
+        case MICROSECOND:
+            return 1000000;
+        default:
+            return 1000000000;
+        }
+    }
+
+    private static StringBuilder pad(StringBuilder sb, long value, int width) {
+        String digits = Long.toString(value);
+        for (int i = digits.length(); i < width; i++) {
+            sb.append('0');
+        }
+        return sb.append(digits);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x < 0) != (y < 0))) {
+            q--;
+        }
+        return q;
+    }
+
+    /** A FlatBuffers table: fields found through a vtable of offsets,
+     * with references to other objects being offsets forward from where
+     * they are stored.
+     */
+    static class Table {
+        final ByteBuffer bb;
+        final int position;
+
+        Table(ByteBuffer bb, int position) {
+            this.bb = bb;
+            this.position = position;
+        }
+
+        static Table root(ByteBuffer bb) {
+            return new Table(bb, bb.getInt(0));
+        }
+
+        /** Where field <code>id</code> is, or <code>0</code> if it is not present. */
+        int field(int id) {
+            int vtable = position - bb.getInt(position);
+            int vtableSize = bb.getShort(vtable) & 0xFFFF;
+            int entry = 4 + 2 * id;
+            if (entry >= vtableSize) {
+                return 0;
+            }
+            int offset = bb.getShort(vtable + entry) & 0xFFFF;
+            return (offset == 0) ? 0 : position + offset;
+        }
+
+        int getByte(int id, int defaultValue) {
+            int field = field(id);
+            return (field == 0) ? defaultValue : bb.get(field) & 0xFF;
+        }
+
+        int getShort(int id, int defaultValue) {
+            int field = field(id);
+            return (field == 0) ? defaultValue : bb.getShort(field);
+        }
+
+        int getInt(int id, int defaultValue) {
+            int field = field(id);
+            return (field == 0) ? defaultValue : bb.getInt(field);
+        }
+
+        long getLong(int id, long defaultValue) {
+            int field = field(id);
+            return (field == 0) ? defaultValue : bb.getLong(field);
+        }
+
+        private int indirect(int field) {
+            return field + bb.getInt(field);
+        }
+
+        Table table(int id) {
+            int field = field(id);
+            return (field == 0) ? null : new Table(bb, indirect(field));
+        }
+
+        String getString(int id) {
+            int field = field(id);
+            if (field == 0) {
+                return null;
+            }
+            int string = indirect(field);
+            byte[] bytes = new byte[bb.getInt(string)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = bb.get(string + 4 + i);
+            }
+            return new String(bytes, UTF8_CHARSET);
+        }
+
+        int vectorLength(int id) {
+            int field = field(id);
+            return (field == 0) ? 0 : bb.getInt(indirect(field));
+        }
+
+        Table vectorTable(int id, int index) {
+            int element = indirect(field(id)) + 4 + 4 * index;
+            return new Table(bb, indirect(element));
+        }
+
+        /** Where the <code>index</code>'th struct of a vector of them is. */
+        int vectorStruct(int id, int index, int size) {
+            return indirect(field(id)) + 4 + size * index;
+        }
+    }
+}
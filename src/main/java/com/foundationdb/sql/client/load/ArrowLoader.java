@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+import com.foundationdb.sql.client.StatementHelper;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.foundationdb.sql.client.StringUtils.joinList;
+
+/**
+ * Loads an Arrow IPC file into the table named after it. The record batches
+ * are the segments, so nothing is parsed to split the file, and values are
+ * bound with their own types into batched prepared <code>INSERT</code>s.
+ * Each record batch is committed on its own.
+ */
+class ArrowLoader extends FileLoader
+{
+    private final String targetTable;
+    private ArrowFile file;
+    /** The Arrow column bound to each parameter. */
+    private int[] fieldIndexes;
+    private String preparedStatement;
+
+    public ArrowLoader(LoadClient client, FileChannel channel, String targetTable) {
+        super(client, channel);
+        this.targetTable = targetTable;
+    }
+
+    @Override
+    public void checkFormat() throws IOException {
+        try {
+            file = new ArrowFile(channel);
+        }
+        catch (LineReader.ParseException ex) {
+            throw new UnsupportedOperationException(ex.getMessage());
+        }
+        if (!file.getUnsupported().isEmpty()) {
+            throw new UnsupportedOperationException("Arrow file cannot be loaded because of " +
+                                                    joinList(file.getUnsupported()));
+        }
+        List<String> names = file.getColumnNames();
+        List<String> columns = client.getColumns();
+        if (columns == null) {
+            columns = names;
+        }
+        if (columns.isEmpty()) {
+            throw new UnsupportedOperationException("Arrow file has no columns");
+        }
+        fieldIndexes = new int[columns.size()];
+        for (int i = 0; i < fieldIndexes.length; i++) {
+            fieldIndexes[i] = names.indexOf(columns.get(i));
+            if (fieldIndexes[i] < 0) {
+                throw new UnsupportedOperationException("Column " + columns.get(i) + " is not in the Arrow file: " + names);
+            }
+        }
+        preparedStatement = CsvLoader.createPreparedStatement(null, targetTable, columns, columns.size());
+    }
+
+    @Override
+    public SegmentLoader wholeFile() {
+        return new ArrowSegmentLoader(0, file.getBatchCount(), 0);
+    }
+
+    /** Whole record batches for each segment, about the same amount of data in each. */
+    @Override
+    public List<? extends SegmentLoader> split(int nsegments) throws IOException, LineReader.ParseException {
+        List<ArrowSegmentLoader> segments = new ArrayList<>(nsegments);
+        int nbatches = file.getBatchCount();
+        long total = 0;
+        for (int i = 0; i < nbatches; i++) {
+            total += file.getBatchBodyLength(i);
+        }
+        long done = 0, rows = 0;
+        int start = 0;
+        for (int i = 0; i < nbatches; i++) {
+            done += file.getBatchBodyLength(i);
+            if ((i == nbatches - 1) || (done * nsegments >= total * (segments.size() + 1))) {
+                segments.add(new ArrowSegmentLoader(start, i + 1, rows));
+                for (int j = start; j <= i; j++) {
+                    rows += file.getBatchLength(j);
+                }
+                start = i + 1;
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.add(new ArrowSegmentLoader(0, 0, 0));
+        }
+        return segments;
+    }
+
+    /** The record batches from <code>start</code> up to <code>end</code>,
+     * with <code>startLineNo</code> being the number of rows before them.
+     */
+    protected class ArrowSegmentLoader extends SegmentLoader {
+        private long rowNo;
+
+        public ArrowSegmentLoader(int start, int end, long startRow) {
+            super(ArrowLoader.this.client, ArrowLoader.this.channel, start, end, startRow);
+        }
+
+        @Override
+        public void runSegment() throws DumpLoaderException, IOException, SQLException {
+            boolean success = false;
+            Connection connection = getConnection(false);
+            StatementHelper stmt = new StatementHelper(connection);
+            List<Object[]> rows = new ArrayList<>();
+            rowNo = startLineNo;
+            try {
+                for (int i = (int)start; i < end; i++) {
+                    ArrowFile.Batch batch = file.readBatch(i);
+                    count += loadBatch(connection, stmt, batch, rows);
+                }
+                success = true;
+            }
+            catch (Exception ex) {
+                Object[] values = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+                throw new DumpLoaderException(rowNo,
+                                              joinList((values == null) ? null : Arrays.asList(values)), ex);
+            }
+            finally {
+                stmt.close();
+                try {
+                    returnConnection(connection, success);
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /** Insert and commit all the rows of a record batch, going through
+         * it again from the start if the transaction can be retried.
+         */
+        private long loadBatch(Connection connection, StatementHelper stmt, ArrowFile.Batch batch,
+                               List<Object[]> rows) throws SQLException {
+            long batchStart = rowNo;
+            int length = (int)batch.getLength();
+            int batchSize = client.getBatchSize();
+            for (int i = 0; ; i++) {
+                long inserted = 0;
+                rowNo = batchStart;
+                try {
+                    for (int from = 0; from < length; from += batchSize) {
+                        int to = Math.min(length, from + batchSize);
+                        rows.clear();
+                        for (int row = from; row < to; row++) {
+                            Object[] values = new Object[fieldIndexes.length];
+                            for (int j = 0; j < values.length; j++) {
+                                values[j] = batch.get(fieldIndexes[j], row);
+                            }
+                            rows.add(values);
+                        }
+                        rowNo = batchStart + to;
+                        inserted += stmt.executeBatchPrepared(preparedStatement, rows);
+                    }
+                    connection.commit();
+                    return inserted;
+                } catch (SQLException e) {
+                    if (!connection.getAutoCommit()) connection.rollback();
+                    if (!StatementHelper.shouldRetry(e, true)) {
+                        throw e;
+                    }
+                    if (!StatementHelper.shouldRetry(e, i < client.getMaxRetries())) {
+                        throw new SQLException("Maximum number of retries met", e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds and counts bytes eight at a time, by testing all the bytes of a
+ * <code>long</code> at once, rather than one by one.
+ */
+final class ByteScanner
+{
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+
+    private ByteScanner() {
+    }
+
+    /** The high bit of each byte of <code>word</code> that equals the byte
+     * repeated in <code>pattern</code>, and no others.
+     */
+    private static long matches(long word, long pattern) {
+        long x = word ^ pattern;
+        return ~(((x & LOW7) + LOW7) | x | LOW7);
+    }
+
+    private static long pattern(byte b) {
+        return (b & 0xFFL) * ONES;
+    }
+
+    private static int firstIndex(long matches, boolean bigEndian) {
+        return (bigEndian ? Long.numberOfLeadingZeros(matches) : Long.numberOfTrailingZeros(matches)) >>> 3;
+    }
+
+    /** The absolute index of the first <code>b</code> in <code>bytes</code> from
+     * <code>from</code> up to <code>to</code>, or <code>-1</code>.
+     */
+    public static int indexOf(ByteBuffer bytes, int from, int to, byte b) {
+        return indexOf(bytes, from, to, b, b);
+    }
+
+    /** The absolute index of the first <code>a</code> or <code>b</code>, or <code>-1</code>. */
+    public static int indexOf(ByteBuffer bytes, int from, int to, byte a, byte b) {
+        long pa = pattern(a), pb = pattern(b);
+        boolean bigEndian = (bytes.order() == ByteOrder.BIG_ENDIAN);
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = bytes.getLong(i);
+            long m = matches(word, pa) | matches(word, pb);
+            if (m != 0) {
+                return i + firstIndex(m, bigEndian);
+            }
+        }
+        for (; i < to; i++) {
+            byte c = bytes.get(i);
+            if ((c == a) || (c == b)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** The number of <code>b</code>s from <code>from</code> up to <code>to</code>. */
+    public static int count(ByteBuffer bytes, int from, int to, byte b) {
+        long p = pattern(b);
+        int n = 0;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            n += Long.bitCount(matches(bytes.getLong(i), p));
+        }
+        for (; i < to; i++) {
+            if (bytes.get(i) == b) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
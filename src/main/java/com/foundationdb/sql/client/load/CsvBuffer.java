@@ -17,39 +17,130 @@ package com.foundationdb.sql.client.load;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class CsvBuffer implements StatementBuffer<List<String>>
 {
     private static final int UNSET = -1;
-    private static final char DELIM = ',';
-    private static final char QUOTE = '\"';
     private static final char NEWLINE = '\n';
     private static final char CARRIAGE_RETURN = '\r';
 
-    private List<String> values;
+    private final CsvFormat format;
+    private final char delimiter;
+    private final String nullString;
+    private final boolean quoteFree;
+    private int[] fieldTargets;
+    private int width, required;
+    /** The text of the current row's fields, with their bounds in {@link #fieldBounds}
+     * as for {@link RowBatch}, by position in the result. */
+    private StringBuilder fieldText = new StringBuilder();
+    private int[] fieldBounds = new int[32];
+    private int nfields;
+    private int fieldTextStart;
+    private int fieldIndex;
+    private boolean skipField;
     private int endIndex;
     private int currentIndex;
+    private int fieldStartIndex;
+    private boolean quoted;
     private StringBuilder rowBuffer;
-    private StringBuilder currentField = new StringBuilder();
     private State state;
 
-    private enum State { ROW_START, FIELD_START, IN_FIELD, IN_QUOTE, AFTER_QUOTE };
+    private enum State { ROW_START, FIELD_START, IN_FIELD, IN_QUOTE, AFTER_QUOTE, ESCAPE_IN_FIELD, ESCAPE_IN_QUOTE };
 
     public CsvBuffer() {
+        this(CsvFormat.DEFAULT);
+    }
+
+    public CsvBuffer(CsvFormat format) {
+        this(format, false);
+    }
+
+    /** With <code>quoteFree</code>, which should come from sampling the file
+     * with {@link CsvFormat#isQuoteFree}, lines are first tried by just splitting
+     * on the delimiter, only falling back to the full parse when they turn
+     * out to need it.
+     */
+    public CsvBuffer(CsvFormat format, boolean quoteFree) {
+        this.format = format;
+        this.delimiter = format.getDelimiter();
+        this.nullString = format.getNullString();
+        this.quoteFree = quoteFree;
         this.rowBuffer = new StringBuilder();
         reset();
     }
 
+    /** Only keep some fields, in a different order.
+     * @param fieldTargets for each field of the line, its position in the result,
+     * or <code>-1</code> to skip it. Fields past the end are skipped as well.
+     * @param width number of result values
+     */
+    public void setProjection(int[] fieldTargets, int width) {
+        this.fieldTargets = fieldTargets;
+        this.width = width;
+        this.required = 0;
+        for (int i = 0; i < fieldTargets.length; i++) {
+            if (fieldTargets[i] >= 0) {
+                required = i + 1;
+            }
+        }
+        if (fieldBounds.length < 2 * width) {
+            fieldBounds = new int[2 * width];
+        }
+        reset();
+    }
+
     private void reset() {
         this.endIndex = UNSET;
-        this.values = new ArrayList();
+        startRow();
         this.currentIndex = 0;
+        this.fieldStartIndex = 0;
+        this.quoted = false;
         this.state = State.ROW_START;
-        this.currentField = new StringBuilder();
         rowBuffer.setLength(0);
     }
 
+    private void startRow() {
+        fieldIndex = 0;
+        skipField = isSkipped(0);
+        fieldText.setLength(0);
+        fieldTextStart = 0;
+        if (fieldTargets == null) {
+            nfields = 0;
+        }
+        else {
+            nfields = width;
+            Arrays.fill(fieldBounds, 0, 2 * width, -1);
+        }
+    }
+
+    private boolean isSkipped(int field) {
+        return (fieldTargets != null) &&
+            ((field >= fieldTargets.length) || (fieldTargets[field] < 0));
+    }
+
+    /** End the current field, whose text in {@link #fieldText} starts at <code>textStart</code>. */
+    private void setValue(int textStart, boolean isNull) {
+        if (!skipField) {
+            int target = (fieldTargets == null) ? fieldIndex : fieldTargets[fieldIndex];
+            if (2 * target + 2 > fieldBounds.length) {
+                fieldBounds = Arrays.copyOf(fieldBounds, fieldBounds.length * 2);
+            }
+            fieldBounds[2 * target] = textStart;
+            fieldBounds[2 * target + 1] = isNull ? -1 : fieldText.length();
+            if (fieldTargets == null) {
+                nfields = fieldIndex + 1;
+            }
+        }
+        skipField = isSkipped(++fieldIndex);
+    }
+
+    /** Drop whatever is left of a row that could not be parsed. */
+    public void discard() {
+        reset();
+    }
+
     @Override
     public void append(char c) {
         rowBuffer.append(c);
@@ -60,11 +151,29 @@ public class CsvBuffer implements StatementBuffer<List<String>>
         if (endIndex == UNSET) {
             throw new IllegalArgumentException("No Row Present");
         }
-        List<String> values = this.values;
+        String[] row = new String[nfields];
+        for (int i = 0; i < nfields; i++) {
+            int end = fieldBounds[2 * i + 1];
+            if (end >= 0) {
+                row[i] = fieldText.substring(fieldBounds[2 * i], end);
+            }
+        }
+        List<String> values = (fieldTargets == null) ? new ArrayList<>(Arrays.asList(row)) : Arrays.asList(row);
         reset();
         return values;
     }
 
+    /** Like {@link #nextStatement}, but add the row to <code>into</code>
+     * without making any <code>String</code>s.
+     */
+    public void nextRow(RowBatch into) {
+        if (endIndex == UNSET) {
+            throw new IllegalArgumentException("No Row Present");
+        }
+        into.add(fieldText, 0, fieldText.length(), fieldBounds, nfields);
+        reset();
+    }
+
     @Override
     public boolean hasStatement(boolean endOfFile) throws IOException, LineReader.ParseException {
         if (endOfFile && !(rowBuffer.length() == 0)) {
@@ -74,6 +183,9 @@ public class CsvBuffer implements StatementBuffer<List<String>>
     }
 
     private boolean hasStatement() throws IOException, LineReader.ParseException {
+        if (quoteFree && (state == State.ROW_START) && splitRow()) {
+            return true;
+        }
         while (currentIndex < rowBuffer.length()) {
             char ch = rowBuffer.charAt(currentIndex++);
             switch (state) {
@@ -92,96 +204,194 @@ public class CsvBuffer implements StatementBuffer<List<String>>
             case AFTER_QUOTE:
                 handleAfterQuote(ch);
                 break;
+            case ESCAPE_IN_FIELD:
+                appendChar(ch);
+                state = State.IN_FIELD;
+                break;
+            case ESCAPE_IN_QUOTE:
+                appendChar(ch);
+                state = State.IN_QUOTE;
+                break;
             }
         }
         if (state == State.FIELD_START || state == State.AFTER_QUOTE || state == State.IN_FIELD) {
-            endIndex = currentIndex;
-            values.add(currentField.toString());
-            currentField.setLength(0);
-            state = State.ROW_START;
+            if (!(state == State.FIELD_START && format.hasTrailingDelimiter())) {
+                addField(currentIndex);
+            }
+            endRow();
         }
         return endIndex != UNSET;
     }
 
-    private void handleRowStart(char b) {
-        if ((b == CARRIAGE_RETURN) || (b == NEWLINE)) {
+    /** Split a whole line that has no quotes or escapes on the delimiter
+     * without going through the state machine.
+     * @return <code>false</code> if the line needs the full parse (or is empty)
+     */
+    private boolean splitRow() throws LineReader.ParseException {
+        int length = rowBuffer.length();
+        int from = currentIndex;
+        while ((from < length) && CsvFormat.isLineEnd(rowBuffer.charAt(from))) {
+            from++;
         }
-        else if (b == DELIM) {
-            values.add("");
-            state = State.FIELD_START;
+        if (from == length) {
+            currentIndex = length;
+            return false;
         }
-        else if (b == QUOTE) {
-            state = State.IN_QUOTE;
+        int stop = length;
+        while (CsvFormat.isLineEnd(rowBuffer.charAt(stop - 1))) {
+            stop--;
+        }
+        int fieldStart = from;
+        for (int i = from; i < stop; i++) {
+            char ch = rowBuffer.charAt(i);
+            if (ch == delimiter) {
+                addRawField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+            else if (format.isQuote(ch) || format.isEscape(ch) || (ch == CARRIAGE_RETURN)) {
+                startRow();
+                currentIndex = from;
+                return false;
+            }
+        }
+        if (!((fieldStart == stop) && (stop > from) && format.hasTrailingDelimiter())) {
+            addRawField(fieldStart, stop);
+        }
+        currentIndex = length;
+        endRow();
+        return true;
+    }
+
+    /** A field that is just the text of the line from <code>start</code> to <code>end</code>. */
+    private void addRawField(int start, int end) {
+        int textStart = fieldText.length();
+        if (skipField || isNull(start, end)) {
+            setValue(textStart, true);
         }
         else {
-            currentField.append(b);
-            state = State.IN_FIELD;
+            fieldText.append(rowBuffer, start, end);
+            setValue(textStart, false);
+        }
+    }
+
+    private boolean isNull(int start, int end) {
+        if ((nullString == null) || ((end - start) != nullString.length())) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (rowBuffer.charAt(i) != nullString.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** End the current field, whose raw text ends just before <code>rawEnd</code>. */
+    private void addField(int rawEnd) {
+        if (skipField || (!quoted && isNull(fieldStartIndex, rawEnd))) {
+            fieldText.setLength(fieldTextStart);
+            setValue(fieldTextStart, true);
         }
+        else {
+            setValue(fieldTextStart, false);
+        }
+        fieldTextStart = fieldText.length();
+        quoted = false;
+        fieldStartIndex = currentIndex;
     }
 
-    private void handleFieldStart(char b) {
+    private void appendChar(char c) {
+        if (!skipField) {
+            fieldText.append(c);
+        }
+    }
+
+    private void endRow() throws LineReader.ParseException {
+        if (fieldIndex < required) {
+            throw new LineReader.ParseException(
+                    "CSV row has " + fieldIndex + " fields, but " + required + " are needed : " + rowBuffer);
+        }
+        endIndex = currentIndex;
+        state = State.ROW_START;
+    }
+
+    private void handleRowStart(char b) throws LineReader.ParseException {
         if ((b == CARRIAGE_RETURN) || (b == NEWLINE)) {
-            values.add(currentField.toString());
-            endIndex = currentIndex;
-            state = State.ROW_START;
         }
-        else if (b == DELIM) {
-            values.add(currentField.toString());
-            currentField.setLength(0);
+        else {
+            fieldStartIndex = currentIndex - 1;
+            handleFieldStart(b);
         }
-        else if (b == QUOTE) {
+    }
+
+    private void handleFieldStart(char b) throws LineReader.ParseException {
+        if ((b == CARRIAGE_RETURN) || (b == NEWLINE)) {
+            if (!format.hasTrailingDelimiter()) {
+                addField(currentIndex - 1);
+            }
+            endRow();
+        }
+        else if (b == delimiter) {
+            addField(currentIndex - 1);
+            state = State.FIELD_START;
+        }
+        else if (format.isQuote(b)) {
+            quoted = true;
             state = State.IN_QUOTE;
         }
+        else if (format.isEscape(b)) {
+            state = State.ESCAPE_IN_FIELD;
+        }
         else {
-            currentField.append(b);
+            appendChar(b);
             state = State.IN_FIELD;
         }
     }
 
     private void handleInField(char b) throws LineReader.ParseException {
         if ((b == CARRIAGE_RETURN) || (b == NEWLINE)) {
-            values.add(currentField.toString());
-            currentField.setLength(0);
-            endIndex = currentIndex;
-            state = State.ROW_START;
-        }
-        else if (b == DELIM) {
-            values.add(currentField.toString());
-            currentField.setLength(0);
+            addField(currentIndex - 1);
+            endRow();
+        }
+        else if (b == delimiter) {
+            addField(currentIndex - 1);
             state = State.FIELD_START;
         }
-        else if (b == QUOTE) {
+        else if (format.isQuote(b)) {
             throw new LineReader.ParseException(
                     "CSV File contains QUOTE in the middle of a field and cannot be fast loaded : " + rowBuffer);
         }
+        else if (format.isEscape(b)) {
+            state = State.ESCAPE_IN_FIELD;
+        }
         else {
-            currentField.append(b);
+            appendChar(b);
         }
     }
 
     private void handleInQuote(char b) {
-        if (b == QUOTE) {
+        if (format.isQuote(b)) {
             state = State.AFTER_QUOTE;
         }
+        else if (format.isEscape(b)) {
+            state = State.ESCAPE_IN_QUOTE;
+        }
         else {
-            currentField.append(b);
+            appendChar(b);
         }
     }
 
     private void handleAfterQuote(char b) throws LineReader.ParseException {
         if ((b == CARRIAGE_RETURN) || (b == NEWLINE)) {
-            values.add(currentField.toString());
-            currentField.setLength(0);
-            endIndex = currentIndex;
-            state = State.ROW_START;
-        }
-        else if (b == DELIM) {
-            values.add(currentField.toString());
-            currentField.setLength(0);
+            addField(currentIndex - 1);
+            endRow();
+        }
+        else if (b == delimiter) {
+            addField(currentIndex - 1);
             state = State.FIELD_START;
         }
-        else if (b == QUOTE) {
-            currentField.append(b);
+        else if (format.isQuote(b)) {
+            appendChar(b);
             state = State.IN_QUOTE;
         }
         else {
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+/**
+ * The dialect of a delimited text file: which characters separate, quote and
+ * escape fields, how SQL NULL is spelled and whether each line ends with an
+ * extra delimiter.
+ */
+public class CsvFormat
+{
+    public static final int NONE = -1;
+    public static final CsvFormat DEFAULT = new CsvFormat(',', '"', null, null, false);
+
+    private final char delimiter;
+    private final int quote;
+    private final int escape;
+    private final String nullString;
+    private final boolean trailingDelimiter;
+
+    /** A <code>null</code> quote disables quoting. A <code>null</code> escape
+     * (or one equal to quote) means the quote is escaped by doubling it.
+     */
+    public CsvFormat(Character delimiter, Character quote, Character escape,
+                     String nullString, boolean trailingDelimiter) {
+        if (delimiter == null) {
+            throw new IllegalArgumentException("CSV delimiter is required");
+        }
+        if (isLineEnd(delimiter) ||
+            delimiter.equals(quote) || delimiter.equals(escape)) {
+            throw new IllegalArgumentException("Invalid CSV delimiter: '" + delimiter + "'");
+        }
+        this.delimiter = delimiter;
+        this.quote = (quote == null) ? NONE : quote;
+        this.escape = ((escape == null) || escape.equals(quote)) ? NONE : escape;
+        this.nullString = nullString;
+        this.trailingDelimiter = trailingDelimiter;
+    }
+
+    public char getDelimiter() {
+        return delimiter;
+    }
+
+    public int getQuote() {
+        return quote;
+    }
+
+    public int getEscape() {
+        return escape;
+    }
+
+    public String getNullString() {
+        return nullString;
+    }
+
+    public boolean hasTrailingDelimiter() {
+        return trailingDelimiter;
+    }
+
+    public boolean isQuote(char c) {
+        return c == quote;
+    }
+
+    public boolean isEscape(char c) {
+        return c == escape;
+    }
+
+    /** Does this sample of the file contain nothing that needs more than splitting on the delimiter? */
+    public boolean isQuoteFree(CharSequence sample) {
+        for (int i = 0; i < sample.length(); i++) {
+            char c = sample.charAt(i);
+            if (isQuote(c) || isEscape(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isLineEnd(char c) {
+        return (c == '\n') || (c == '\r');
+    }
+}
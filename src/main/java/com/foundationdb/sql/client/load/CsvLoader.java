@@ -18,43 +18,76 @@ package com.foundationdb.sql.client.load;
 import com.foundationdb.sql.client.StatementHelper;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static com.foundationdb.sql.client.StringUtils.joinList;
 
 class CsvLoader extends FileLoader
 {
-    private final String targetTable;
+    private static final String SKIP_COLUMN = "-";
+
+    private final String targetSchema, targetTable;
     private final boolean header;
+    private final CsvFormat format;
+    private final List<String> selectedColumns;
+    private boolean quoteFree;
+    private int[] fieldTargets;
+    private List<String> targetColumns;
     private String preparedStatement;
+    private int preparedParameterCount;
+    private long headerLines;
 
     public CsvLoader(LoadClient client, FileChannel channel, 
                      String targetTable, boolean header) {
+        this(client, channel, null, targetTable, header, client.getCsvFormat(), client.getColumns());
+    }
+
+    /** A <code>null</code> schema means the one connected to. All the columns
+     * are loaded, since <code>--columns</code> is for a single file given to load.
+     */
+    public CsvLoader(LoadClient client, FileChannel channel,
+                     String targetSchema, String targetTable, boolean header, CsvFormat format) {
+        this(client, channel, targetSchema, targetTable, header, format, null);
+    }
+
+    private CsvLoader(LoadClient client, FileChannel channel,
+                      String targetSchema, String targetTable, boolean header, CsvFormat format,
+                      List<String> selectedColumns) {
         super(client, channel);
+        this.targetSchema = targetSchema;
         this.targetTable = targetTable;
         this.header = header;
+        this.format = format;
+        this.selectedColumns = selectedColumns;
     }
 
     public SegmentLoader wholeFile() throws IOException, LineReader.ParseException {
         long start = 0;
         long end = channel.size();
         start = createPreparedStatement();
-        return new CsvSegmentLoader(start, end, 0);
+        return new CsvSegmentLoader(start, end, headerLines);
     }
 
     private long createPreparedStatement() throws IOException, LineReader.ParseException {
-        long start;List<String> columns = null;
+        long start;
+        List<String> columns = null;
         int columnCount = 0;
-        LineReader lines = new LineReader(channel, client.getEncoding(), 1); // Need accurate position.
-        CsvBuffer buffer = new CsvBuffer();
+        LineReader lines = new LineReader(channel, client.getEncoding());
+        CsvBuffer buffer = new CsvBuffer(format);
         if (lines.readLine(buffer) && buffer.hasStatement(false)) {
             if (header) {
                 columns = buffer.nextStatement();
                 columnCount = columns.size();
+                if (columns.contains(null)) {
+                    throw new LineReader.ParseException("CSV header has a NULL column name: " + columns);
+                }
             } else {
                 columnCount = buffer.nextStatement().size();
             }
@@ -63,18 +96,81 @@ class CsvLoader extends FileLoader
         }
         if (header) {
             // since CsvBuffer will always end a row at the end of a line, the position must be the end of a line.
-            // Well, so long as the character buffer size is 1 above
-            start = lines.position();
+            start = lines.bytePosition();
+            headerLines = lines.getLineCounter();
         } else {
             start = 0;
         }
-        preparedStatement = createPreparedStatement(targetTable, columns, columnCount);
+        if (selectedColumns != null) {
+            columns = project(columns, columnCount, selectedColumns);
+            columnCount = columns.size();
+        }
+        preparedStatement = createPreparedStatement(targetSchema, targetTable, columns, columnCount);
+        targetColumns = columns;
+        preparedParameterCount = columnCount;
+        quoteFree = sampleQuoteFree();
         return start;
     }
 
-    private static String createPreparedStatement(String targetTable, List<String> columns, int columnCount) {
+    /** Work out {@link #fieldTargets} from the <code>--columns</code> list.
+     * With a header, it names the header fields to load, in the order to bind them.
+     * Without, it gives the target column for each field in turn, with
+     * <code>-</code> to skip a field.
+     * @return the target columns
+     */
+    private List<String> project(List<String> header, int fieldCount, List<String> selected)
+            throws LineReader.ParseException {
+        List<String> targets = new ArrayList<>();
+        if (header != null) {
+            fieldTargets = new int[fieldCount];
+            Arrays.fill(fieldTargets, -1);
+            for (String column : selected) {
+                int field = header.indexOf(column);
+                if (field < 0) {
+                    throw new LineReader.ParseException("Column " + column + " is not in the CSV header: " + header);
+                }
+                if (fieldTargets[field] >= 0) {
+                    throw new LineReader.ParseException("Column " + column + " is given more than once");
+                }
+                fieldTargets[field] = targets.size();
+                targets.add(column);
+            }
+        }
+        else {
+            fieldTargets = new int[selected.size()];
+            for (int i = 0; i < fieldTargets.length; i++) {
+                String column = selected.get(i);
+                if (SKIP_COLUMN.equals(column)) {
+                    fieldTargets[i] = -1;
+                }
+                else {
+                    fieldTargets[i] = targets.size();
+                    targets.add(column);
+                }
+            }
+        }
+        if (targets.isEmpty()) {
+            throw new LineReader.ParseException("No columns selected to load");
+        }
+        return targets;
+    }
+
+    /** Check the start of the file for anything that needs the full CSV parse. */
+    private boolean sampleQuoteFree() throws IOException {
+        ByteBuffer sample = ByteBuffer.allocate((int)Math.min(BUFFER_SIZE, channel.size()));
+        channel.read(sample, 0);
+        sample.flip();
+        // A character cut off at the end of the sample is just replaced.
+        return format.isQuoteFree(Charset.forName(client.getEncoding()).decode(sample));
+    }
+
+    static String createPreparedStatement(String targetSchema, String targetTable, List<String> columns, int columnCount) {
         StringBuilder sb = new StringBuilder();
         sb.append("INSERT INTO \"");
+        if (targetSchema != null) {
+            sb.append(escapeIdentifier(targetSchema));
+            sb.append("\".\"");
+        }
         sb.append(escapeIdentifier(targetTable));
         sb.append("\" ");
         if (columns != null) {
@@ -108,9 +204,11 @@ class CsvLoader extends FileLoader
         long start = 0;
         long end = channel.size();
         LineReader lines = new LineReader(channel, client.getEncoding(),
-                                          FileLoader.SMALL_BUFFER_SIZE, 1,
+                                          BUFFER_SIZE, BUFFER_SIZE,
                                           start, end);
         start = createPreparedStatement();
+        // Having parsed everything up to each split, the line count there is exact.
+        long lineNo = headerLines;
         long mid;
         while (nsegments > 1) {
             if ( ((end - start) < nsegments) && ((end - start) > 0)) {
@@ -120,21 +218,64 @@ class CsvLoader extends FileLoader
             else {
                 mid = start + (end - start) / nsegments;
             }
-            mid = lines.splitParse(mid, new CsvBuffer());
-            segments.add(new CsvSegmentLoader(start, mid, lines.getLineCounter()));
+            mid = splitParse(lines, mid);
+            segments.add(new CsvSegmentLoader(start, mid, lineNo));
             if (mid >= (end - 1))
                 return segments;
             start = mid;
+            lineNo = lines.getLineCounter();
             lines.position(mid);
             nsegments--;
         }
-        segments.add(new CsvSegmentLoader(start, end, lines.getLineCounter()));
+        segments.add(new CsvSegmentLoader(start, end, lineNo));
         return segments;
     }
 
+    /** Like {@link LineReader#splitParse}, except that with rejects a row
+     * that does not parse ends where the error was found, at the end of a
+     * line, just as it will when the segment that has it rejects it.
+     */
+    private long splitParse(LineReader lines, long point) throws IOException, LineReader.ParseException {
+        CsvBuffer buffer = new CsvBuffer(format);
+        long before = -1;
+        long after = -1;
+        while (lines.bytePosition() < point) {
+            before = lines.bytePosition();
+            try {
+                lines.readLine(buffer);
+            }
+            catch (LineReader.ParseException ex) {
+                if (client.getRejects() == null) {
+                    throw ex;
+                }
+                buffer.discard();
+            }
+            after = lines.bytePosition();
+        }
+        if (before < after) {
+            return after;
+        } else {
+            return before;
+        }
+    }
+
     protected class CsvSegmentLoader extends SegmentLoader {
+        private final DuplicateResolver duplicates;
+        private boolean resolvingDuplicates;
+        private final Rejects rejects;
+        private final RowSpans spans = new RowSpans();
+
         public CsvSegmentLoader(long start, long end, long startLineNo) {
             super(CsvLoader.this.client, CsvLoader.this.channel, start, end, startLineNo);
+            if (client.getOnDuplicate() == OnDuplicate.ERROR) {
+                duplicates = null;
+            }
+            else {
+                duplicates = new DuplicateResolver(client.getOnDuplicate(),
+                                                   (targetSchema != null) ? targetSchema : client.getSchema(),
+                                                   targetTable, targetColumns);
+            }
+            rejects = client.getRejects();
         }
 
         @Override
@@ -147,34 +288,41 @@ class CsvLoader extends FileLoader
             Connection connection = client.getConnection(false);
             CommitStatus status = new CommitStatus();
             StatementHelper stmt = new StatementHelper(connection);
-            List<String[]> uncommittedStatements = new ArrayList<>();
+            // Rows stay as text until they are bound, and the storage is reused after each commit.
+            RowBatch uncommittedStatements = new RowBatch();
+            int batchStart = 0;
             LineReader lines = new LineReader(channel, client.getEncoding(),
                     BUFFER_SIZE, BUFFER_SIZE,
                     start, end);
-            List<String> values = null;
             try {
-                CsvBuffer buffer = new CsvBuffer();
+                CsvBuffer buffer = new CsvBuffer(format, quoteFree);
+                if (fieldTargets != null) {
+                    buffer.setProjection(fieldTargets, preparedParameterCount);
+                }
                 while (true) {
-                    if (!lines.readLine(buffer)) {
-                        break;
-                    }
-                    values = buffer.nextStatement();
+                    long rowLineNo = startLineNo + lines.getLineCounter() + 1;
+                    long rowStart = lines.bytePosition();
                     try {
-                        String[] valuesArray = values.toArray(new String[values.size()]);
-                        uncommittedStatements.add(valuesArray);
-                        status.pending += stmt.executeUpdatePrepared(preparedStatement, valuesArray);
-                        if (status.pending == 0) { // successful commit
-                            uncommittedStatements.clear();
+                        if (!lines.readLine(buffer)) {
+                            break;
                         }
-                    } catch (SQLException e) {
-                        if (!connection.getAutoCommit()) connection.rollback();
-                        if (StatementHelper.shouldRetry(e, client.getMaxRetries() > 0)) {
-                            retry(connection, stmt, status, uncommittedStatements, e);
-                        } else {
-                            throw(e);
+                    } catch (LineReader.ParseException ex) {
+                        if (rejects == null) {
+                            throw ex;
                         }
+                        rejects.reject(channel, rowLineNo, rowStart, lines.bytePosition(), ex);
+                        buffer.discard();
+                        continue;
                     }
-
+                    buffer.nextRow(uncommittedStatements);
+                    spans.add(rowLineNo, rowStart, lines.bytePosition());
+                    if (uncommittedStatements.size() - batchStart >= client.getBatchSize()) {
+                        executeBatch(connection, stmt, status, batchStart, uncommittedStatements);
+                        batchStart = uncommittedStatements.size();
+                    }
+                }
+                if (uncommittedStatements.size() > batchStart) {
+                    executeBatch(connection, stmt, status, batchStart, uncommittedStatements);
                 }
                 if (status.pending > 0) {
                     try {
@@ -182,18 +330,16 @@ class CsvLoader extends FileLoader
                         status.commit();
                     } catch (SQLException e) {
                         if (!connection.getAutoCommit()) connection.rollback();
-                        if (StatementHelper.shouldRetry(e, client.getMaxRetries() > 0)) {
-                            retry(connection, stmt, status, uncommittedStatements, e);
-                        } else {
-                            throw(e);
-                        }
+                        recover(connection, stmt, status, uncommittedStatements, e);
                     }
                 }
                 success = true;
             }
             catch (Exception ex) {
-                // TODO + startLineNo
-                throw new DumpLoaderException(lines.getLineCounter(), joinList(values), ex);
+                String[] values = uncommittedStatements.isEmpty() ? null :
+                    uncommittedStatements.get(uncommittedStatements.size() - 1);
+                throw new DumpLoaderException(startLineNo + lines.getLineCounter(),
+                                              joinList((values == null) ? null : Arrays.asList(values)), ex);
             }
             finally {
                 if (stmt != null) {
@@ -206,31 +352,167 @@ class CsvLoader extends FileLoader
                 }
             }
             count += status.count;
+            skipped += status.skipped;
+            updated += status.updated;
+        }
+
+        /** Send the uncommitted rows from <code>batchStart</code> on. */
+        private void executeBatch(Connection connection, StatementHelper stmt, CommitStatus status,
+                                  int batchStart, List<String[]> uncommittedStatements) throws IOException, SQLException {
+            try {
+                status.pending += stmt.executeBatchPrepared(preparedStatement,
+                                                            uncommittedStatements.subList(batchStart, uncommittedStatements.size()));
+            } catch (SQLException e) {
+                if (!connection.getAutoCommit()) connection.rollback();
+                recover(connection, stmt, status, uncommittedStatements, e);
+            }
+        }
+
+        /** After a rollback, get the uncommitted rows in some other way, or give up. */
+        private void recover(Connection connection, StatementHelper stmt, CommitStatus status,
+                             List<String[]> uncommittedStatements, SQLException e) throws IOException, SQLException {
+            if (isResolvable(e) || StatementHelper.shouldRetry(e, client.getMaxRetries() > 0)) {
+                retry(connection, stmt, status, uncommittedStatements, e);
+            } else if (rejects != null) {
+                isolate(connection, stmt, status, uncommittedStatements);
+            } else {
+                throw(e);
+            }
+        }
+
+        /** A duplicate key that the second pass, one row at a time, can deal with. */
+        private boolean isResolvable(SQLException e) {
+            return (duplicates != null) && !resolvingDuplicates && StatementHelper.isDuplicateKey(e);
+        }
+
+        private void insertRows(StatementHelper stmt, CommitStatus status, List<String[]> rows) throws SQLException {
+            if (resolvingDuplicates) {
+                for (String[] row : rows) {
+                    duplicates.resolve(stmt, row, status);
+                }
+            }
+            else {
+                int batchSize = client.getBatchSize();
+                for (int j = 0; j < rows.size(); j += batchSize) {
+                    List<String[]> batch = rows.subList(j, Math.min(j + batchSize, rows.size()));
+                    status.pending += stmt.executeBatchPrepared(preparedStatement, batch);
+                }
+            }
+        }
+
+        private void commitRows(Connection connection, CommitStatus status) throws SQLException {
+            if (status.pending + status.pendingSkipped + status.pendingUpdated > 0) {
+                connection.commit();
+                status.commit();
+            }
         }
 
         private void retry(Connection connection, StatementHelper stmt, CommitStatus status,
-                           List<String[]> uncommittedStatements, SQLException e) throws SQLException {
-            for (int i = 0; StatementHelper.shouldRetry(e, i < client.getMaxRetries()); i++) {
-                status.pending = 0;
+                           List<String[]> uncommittedStatements, SQLException e) throws IOException, SQLException {
+            for (int i = 0; isResolvable(e) || StatementHelper.shouldRetry(e, i < client.getMaxRetries()); i++) {
+                if (isResolvable(e)) {
+                    // Not a retry: go through the rows again, checking for duplicates.
+                    resolvingDuplicates = true;
+                    i--;
+                }
+                status.rollback();
                 try {
-                    for (String[] values : uncommittedStatements) {
-                        status.pending += stmt.executeUpdatePrepared(preparedStatement, values);
-                    }
-                    if (status.pending > 0) {
-                        connection.commit();
-                        status.commit();
-                    }
+                    insertRows(stmt, status, uncommittedStatements);
+                    commitRows(connection, status);
                     uncommittedStatements.clear();
+                    spans.clear();
+                    resolvingDuplicates = false;
                     return;
                 } catch (SQLException newE) {
                     if (!connection.getAutoCommit()) connection.rollback();
-                    if (!StatementHelper.shouldRetry(newE, true)) {
-                        throw(newE);
+                    if (!isResolvable(newE) && !StatementHelper.shouldRetry(newE, true)) {
+                        if (rejects == null) {
+                            throw(newE);
+                        }
+                        isolate(connection, stmt, status, uncommittedStatements);
+                        return;
                     }
                     e = newE;
                 }
             }
             throw(new SQLException("Maximum number of retries met", e));
         }
+
+        /** Some row was refused by the server: load the uncommitted rows again,
+         * splitting any group that fails in half until the bad rows are
+         * found and rejected. Each group that works is committed on its own.
+         */
+        private void isolate(Connection connection, StatementHelper stmt, CommitStatus status,
+                             List<String[]> uncommittedStatements) throws IOException, SQLException {
+            isolate(connection, stmt, status, uncommittedStatements, 0, uncommittedStatements.size());
+            uncommittedStatements.clear();
+            spans.clear();
+            resolvingDuplicates = false;
+        }
+
+        private void isolate(Connection connection, StatementHelper stmt, CommitStatus status,
+                             List<String[]> rows, int from, int to) throws IOException, SQLException {
+            for (int i = 0; ; i++) {
+                status.rollback();
+                try {
+                    insertRows(stmt, status, rows.subList(from, to));
+                    commitRows(connection, status);
+                    return;
+                } catch (SQLException e) {
+                    if (!connection.getAutoCommit()) connection.rollback();
+                    if (isResolvable(e)) {
+                        resolvingDuplicates = true;
+                        i--;
+                        continue;
+                    }
+                    if (StatementHelper.shouldRetry(e, true)) {
+                        if (!StatementHelper.shouldRetry(e, i < client.getMaxRetries())) {
+                            throw(new SQLException("Maximum number of retries met", e));
+                        }
+                        continue;
+                    }
+                    if (to - from == 1) {
+                        rejects.reject(channel, spans.lineNo(from), spans.start(from), spans.end(from), e);
+                        return;
+                    }
+                }
+                int mid = (from + to) >>> 1;
+                isolate(connection, stmt, status, rows, from, mid);
+                isolate(connection, stmt, status, rows, mid, to);
+                return;
+            }
+        }
+    }
+
+    /** Where each of the uncommitted rows came from in the file, for reporting. */
+    static class RowSpans {
+        private long[] spans = new long[3 * 64];
+        private int size;
+
+        public void add(long lineNo, long start, long end) {
+            if (3 * (size + 1) > spans.length) {
+                spans = Arrays.copyOf(spans, spans.length * 2);
+            }
+            spans[3 * size] = lineNo;
+            spans[3 * size + 1] = start;
+            spans[3 * size + 2] = end;
+            size++;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        public long lineNo(int i) {
+            return spans[3 * i];
+        }
+
+        public long start(int i) {
+            return spans[3 * i + 1];
+        }
+
+        public long end(int i) {
+            return spans[3 * i + 2];
+        }
     }
 }
@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the literal <code>INSERT INTO t VALUES(...),(...);</code> statements
+ * of a dump into a prepared statement and its parameters, like
+ * {@link MySQLBuffer} does for MySQL dumps.
+ * Only strings, numbers and <code>NULL</code> are taken apart; anything else,
+ * such as <code>E'...'</code> strings, typed literals or expressions, means the
+ * statement has to be sent as it is.
+ */
+class DumpInsertParser
+{
+    private static final String INSERT_INTO = "INSERT INTO ";
+    private static final String VALUES = "VALUES";
+    private static final String[] emptyStringForToArray = new String[0];
+
+    private final String sql;
+    private int index;
+
+    private DumpInsertParser(String sql) {
+        this.sql = sql;
+    }
+
+    /** @return the prepared form of <code>sql</code>, or <code>null</code> if it cannot be had */
+    public static MySQLBuffer.Query parse(String sql) {
+        if (!sql.startsWith(INSERT_INTO)) {
+            return null;
+        }
+        return new DumpInsertParser(sql).parse();
+    }
+
+    private MySQLBuffer.Query parse() {
+        index = INSERT_INTO.length();
+        int valuesIndex = findValues();
+        if (valuesIndex < 0) {
+            return null;
+        }
+        String tableName = sql.substring(INSERT_INTO.length(), valuesIndex).trim();
+        StringBuilder prepared = new StringBuilder(sql.length());
+        prepared.append(sql, 0, index);
+        List<String> values = new ArrayList<>();
+        int rowCount = 0, width = -1;
+        while (true) {
+            skipSpace();
+            if (!expect('(')) {
+                return null;
+            }
+            prepared.append(rowCount == 0 ? "(" : ",(");
+            int fields = 0;
+            while (true) {
+                skipSpace();
+                if (!value(values)) {
+                    return null;
+                }
+                prepared.append(fields == 0 ? "?" : ",?");
+                fields++;
+                skipSpace();
+                if (expect(')')) {
+                    prepared.append(')');
+                    break;
+                }
+                if (!expect(',')) {
+                    return null;
+                }
+            }
+            if ((width >= 0) && (fields != width)) {
+                return null;
+            }
+            width = fields;
+            rowCount++;
+            skipSpace();
+            if (expect(',')) {
+                continue;
+            }
+            if (expect(';')) {
+                skipSpace();
+            }
+            if (index < sql.length()) {
+                return null;
+            }
+            break;
+        }
+        return new MySQLBuffer.Query(prepared.toString(), tableName, rowCount,
+                                     values.toArray(emptyStringForToArray));
+    }
+
+    /** Move past the <code>VALUES</code> keyword after the table name and return where it starts. */
+    private int findValues() {
+        while (index < sql.length()) {
+            char c = sql.charAt(index);
+            if ((c == '"') || (c == '`')) {
+                int close = sql.indexOf(c, index + 1);
+                if (close < 0) {
+                    return -1;
+                }
+                index = close + 1;
+            }
+            else if (sql.regionMatches(true, index, VALUES, 0, VALUES.length()) &&
+                     !isIdentifier(sql.charAt(index - 1)) &&
+                     ((index + VALUES.length() == sql.length()) ||
+                      !isIdentifier(sql.charAt(index + VALUES.length())))) {
+                int start = index;
+                index += VALUES.length();
+                return start;
+            }
+            else if ((c == '\'') || (c == '(') || (c == ';')) {
+                return -1;
+            }
+            else {
+                index++;
+            }
+        }
+        return -1;
+    }
+
+    private boolean value(List<String> values) {
+        if (index >= sql.length()) {
+            return false;
+        }
+        char c = sql.charAt(index);
+        if (c == '\'') {
+            StringBuilder str = new StringBuilder();
+            index++;
+            while (true) {
+                int close = sql.indexOf('\'', index);
+                if (close < 0) {
+                    return false;
+                }
+                str.append(sql, index, close);
+                index = close + 1;
+                if ((index < sql.length()) && (sql.charAt(index) == '\'')) {
+                    str.append('\'');
+                    index++;
+                }
+                else {
+                    break;
+                }
+            }
+            values.add(str.toString());
+            return true;
+        }
+        if (sql.regionMatches(true, index, "NULL", 0, 4) &&
+            ((index + 4 == sql.length()) || !isIdentifier(sql.charAt(index + 4)))) {
+            index += 4;
+            values.add(null);
+            return true;
+        }
+        int start = index;
+        if ((c == '-') || (c == '+')) {
+            index++;
+        }
+        int digits = skipDigits();
+        if ((index < sql.length()) && (sql.charAt(index) == '.')) {
+            index++;
+            digits += skipDigits();
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if ((index < sql.length()) && ((sql.charAt(index) == 'e') || (sql.charAt(index) == 'E'))) {
+            index++;
+            if ((index < sql.length()) && ((sql.charAt(index) == '-') || (sql.charAt(index) == '+'))) {
+                index++;
+            }
+            if (skipDigits() == 0) {
+                return false;
+            }
+        }
+        if ((index < sql.length()) && isIdentifier(sql.charAt(index))) {
+            return false;
+        }
+        values.add(sql.substring(start, index));
+        return true;
+    }
+
+    private int skipDigits() {
+        int start = index;
+        while ((index < sql.length()) && Character.isDigit(sql.charAt(index))) {
+            index++;
+        }
+        return index - start;
+    }
+
+    private void skipSpace() {
+        while ((index < sql.length()) && Character.isWhitespace(sql.charAt(index))) {
+            index++;
+        }
+    }
+
+    private boolean expect(char c) {
+        if ((index < sql.length()) && (sql.charAt(index) == c)) {
+            index++;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isIdentifier(char c) {
+        return Character.isLetterOrDigit(c) || (c == '_');
+    }
+}
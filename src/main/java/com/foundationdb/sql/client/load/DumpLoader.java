@@ -19,16 +19,20 @@ import com.foundationdb.sql.client.StatementHelper;
 
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
-
-import com.foundationdb.sql.client.cli.QueryBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 class DumpLoader extends FileLoader
 {
     boolean hasDDL;
+    private DumpSegmentRangesLoader beforeData;
+    private DumpSegmentAfterDataLoader afterData;
 
     public DumpLoader(LoadClient client, FileChannel channel) {
         super(client, channel);
@@ -43,11 +47,7 @@ class DumpLoader extends FileLoader
             if (line.toUpperCase().startsWith("INSERT INTO "))
                 return;         // Good.
             if (line.startsWith("DROP ")) {
-                if (client.getThreads() > 1)
-                    // TODO: This is actually possible, but when splitting you have to
-                    // check for an INSERT whose CREATE TABLE hasn't been seen.  And then
-                    // binary search back for it and start the segment there.
-                    throw new UnsupportedOperationException("File contains DDL and cannot be loaded using multiple threads. Use fdbsqldump --no-schemas.");
+                // With multiple threads, split() separates the DDL from the data.
                 hasDDL = true;
                 break;
             }
@@ -73,42 +73,179 @@ class DumpLoader extends FileLoader
         }
     }
 
+    /** Some separate parts of the file, executed in order. */
+    protected class DumpSegmentRangesLoader extends SegmentLoader {
+        private final List<long[]> ranges = new ArrayList<>();
+
+        public DumpSegmentRangesLoader() {
+            super(DumpLoader.this.client, DumpLoader.this.channel, 0, 0, 0);
+        }
+
+        public void add(long start, long end, long startLineNo) {
+            if (!ranges.isEmpty()) {
+                long[] last = ranges.get(ranges.size() - 1);
+                if (last[1] == start) {
+                    last[1] = end;
+                    return;
+                }
+            }
+            ranges.add(new long[] { start, end, startLineNo });
+        }
+
+        /** <code>{ start, end, startLineNo }</code> for each part. */
+        List<long[]> getRanges() {
+            return ranges;
+        }
+
+        @Override
+        public void runSegment() throws SQLException, IOException, DumpLoaderException {
+            for (long[] range : ranges) {
+                count += executeSegmentQuery(range[0], range[1], range[2]);
+            }
+        }
+    }
+
+    /** The deferred indexes, one group at a time in each thread, and then the
+     * rest of the DDL that goes after the data.
+     */
+    protected class DumpSegmentAfterDataLoader extends DumpSegmentRangesLoader {
+        final List<DumpSegmentRangesLoader> indexes = new ArrayList<>();
+
+        @Override
+        public void runSegment() throws SQLException, IOException, DumpLoaderException {
+            if (!indexes.isEmpty()) {
+                ExecutorService pool = Executors.newFixedThreadPool((int)Math.min(client.getThreads(), indexes.size()));
+                for (DumpSegmentRangesLoader group : indexes) {
+                    pool.execute(group);
+                }
+                pool.shutdown();
+                try {
+                    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                for (DumpSegmentRangesLoader group : indexes) {
+                    if (group.failed) {
+                        throw new SQLException("Not all deferred indexes could be created");
+                    }
+                }
+            }
+            super.runSegment();
+        }
+    }
+
+    /** Index DDL taken out of the DDL files of a dump directory, to be
+     * built after the data of all of them, with the indexes of other groups.
+     */
+    static class DeferredIndexLoader extends SegmentLoader {
+        private final List<String> statements = new ArrayList<>();
+        private final List<Long> lineNos = new ArrayList<>();
+
+        public DeferredIndexLoader(LoadClient client) {
+            super(client, null, 0, 0, 0);
+        }
+
+        public void add(String sql, long lineNo) {
+            statements.add(sql);
+            lineNos.add(lineNo);
+        }
+
+        List<String> getStatements() {
+            return statements;
+        }
+
+        @Override
+        public void runSegment() throws SQLException, DumpLoaderException {
+            Connection conn = client.getConnection(true);
+            StatementHelper stmt = new StatementHelper(conn);
+            try {
+                for (int i = 0; i < statements.size(); i++) {
+                    try {
+                        stmt.execute(statements.get(i));
+                        count++;
+                    }
+                    catch (SQLException ex) {
+                        throw new DumpLoaderException(lineNos.get(i), statements.get(i), ex);
+                    }
+                }
+            }
+            finally {
+                stmt.close();
+                client.returnConnection(conn);
+            }
+        }
+    }
+
     protected long executeSegmentQuery (long start, long end, long startLineNo)
             throws SQLException, IOException, DumpLoaderException {
         String sql = null;
-        LineReader lines = new LineReader(channel, client.getEncoding(),
-                BUFFER_SIZE, BUFFER_SIZE,
-                start, end);
+        StatementSplitter statements = new StatementSplitter(channel, client.getEncoding(),
+                                                             BUFFER_SIZE, start, end);
         List<String> uncommittedStatements = new ArrayList<String>();
-        QueryBuffer buffer = new QueryBuffer();
+        InsertBatch batch = client.getPreparedInserts() ? new InsertBatch() : null;
+        StatementPipeline pipeline = (client.getPipeline() > 1) ? new StatementPipeline() : null;
         Connection conn = getConnection(hasDDL);
         StatementHelper stmt = new StatementHelper(conn);
         CommitStatus status = new CommitStatus();
         boolean success = false;
         try {
-            while (true) {
-                if(!buffer.hasNonSpace()) {
-                    buffer.reset();
-                }
-                if (lines.readLine(buffer)) {
-                    while (buffer.hasQuery()) {
-                        try {
-                            sql = buffer.nextQuery();
-                            uncommittedStatements.add(sql);
-                            executeSQL (conn, stmt, sql, status);
-                            if (status.pending == 0) uncommittedStatements.clear();
-                        } catch (SQLException e) {
-                            if (!conn.getAutoCommit()) conn.rollback();
-                            if (StatementHelper.shouldRetry(e, client.getMaxRetries() > 1)) {
-                                retry(conn, stmt, status, uncommittedStatements, e);
-                            } else {
-                                throw(e);
-                            }
+            while (statements.next()) {
+                try {
+                    sql = statements.getStatement();
+                    MySQLBuffer.Query query = null;
+                    if (batch != null) {
+                        query = DumpInsertParser.parse(sql);
+                        if (!batch.fits(query)) {
+                            executeBatch(conn, stmt, batch, status, uncommittedStatements);
+                        }
+                    }
+                    boolean pipelined = (pipeline != null) && StatementPipeline.accepts(sql, query);
+                    if ((pipeline != null) && !pipelined && !pipeline.statements.isEmpty()) {
+                        executePipeline(conn, stmt, pipeline, status, uncommittedStatements);
+                    }
+                    if (query != null) {
+                        batch.add(query, sql);
+                        if (batch.statements.size() >= client.getBatchSize()) {
+                            executeBatch(conn, stmt, batch, status, uncommittedStatements);
+                        }
+                        continue;
+                    }
+                    if (pipelined) {
+                        pipeline.statements.add(sql);
+                        if (pipeline.statements.size() >= client.getPipeline()) {
+                            executePipeline(conn, stmt, pipeline, status, uncommittedStatements);
                         }
+                        continue;
+                    }
+                    uncommittedStatements.add(sql);
+                    executeSQL (conn, stmt, sql, status);
+                    if (status.pending == 0) uncommittedStatements.clear();
+                } catch (SQLException e) {
+                    if (!conn.getAutoCommit()) conn.rollback();
+                    if (StatementHelper.shouldRetry(e, client.getMaxRetries() > 1)) {
+                        retry(conn, stmt, status, uncommittedStatements, e);
+                    } else {
+                        throw(e);
+                    }
+                }
+            }
+            if (((batch != null) && !batch.statements.isEmpty()) ||
+                ((pipeline != null) && !pipeline.statements.isEmpty())) {
+                try {
+                    if ((batch != null) && !batch.statements.isEmpty()) {
+                        executeBatch(conn, stmt, batch, status, uncommittedStatements);
+                    }
+                    if ((pipeline != null) && !pipeline.statements.isEmpty()) {
+                        executePipeline(conn, stmt, pipeline, status, uncommittedStatements);
+                    }
+                } catch (SQLException e) {
+                    if (!conn.getAutoCommit()) conn.rollback();
+                    if (StatementHelper.shouldRetry(e, client.getMaxRetries() > 1)) {
+                        retry(conn, stmt, status, uncommittedStatements, e);
+                    } else {
+                        throw(e);
                     }
-                    buffer.reset();
-                } else {
-                    break;
                 }
             }
             if (status.pending > 0) {
@@ -125,7 +262,7 @@ class DumpLoader extends FileLoader
                 }
             }
         } catch (Exception ex) {
-            throw new DumpLoaderException(lines.getLineCounter() + startLineNo, sql, ex);
+            throw new DumpLoaderException(statements.getLineCounter() + 1 + startLineNo, sql, ex);
         } finally {
             stmt.close();
             returnConnection(conn, success);
@@ -158,6 +295,90 @@ class DumpLoader extends FileLoader
         throw(new SQLException("Maximum number of retries met", e));
     }
 
+    /** Consecutive <code>INSERT</code>s of the same shape, to go as one batch of a prepared statement. */
+    static class InsertBatch {
+        String prepared;
+        final List<String[]> rows = new ArrayList<>();
+        final List<String> statements = new ArrayList<>();
+
+        boolean fits(MySQLBuffer.Query query) {
+            return statements.isEmpty() ||
+                ((query != null) && prepared.equals(query.getPreparedStatement()));
+        }
+
+        void add(MySQLBuffer.Query query, String sql) {
+            prepared = query.getPreparedStatement();
+            rows.add(query.getValues());
+            statements.add(sql);
+        }
+
+        void clear() {
+            prepared = null;
+            rows.clear();
+            statements.clear();
+        }
+    }
+
+    /** Send what has been batched up. Should that fail, the statements are
+     * among the uncommitted ones, and so get retried as they are.
+     */
+    void executeBatch(Connection conn, StatementHelper helper, InsertBatch batch,
+                      CommitStatus status, List<String> uncommittedStatements) throws SQLException {
+        uncommittedStatements.addAll(batch.statements);
+        if (hasDDL && conn.getAutoCommit()) {
+            conn.setAutoCommit(false);
+        }
+        try {
+            status.pending += helper.executeBatchPrepared(batch.prepared, batch.rows);
+        }
+        finally {
+            batch.clear();
+        }
+        if ((client.getCommitFrequency() > 0) &&
+            (status.pending >= client.getCommitFrequency())) {
+            conn.commit();
+            status.commit();
+            uncommittedStatements.clear();
+        }
+    }
+
+    /** <code>INSERT</code>s sent together without waiting for each result.
+     * The whole batch goes to the server as one transaction, so only
+     * <code>INSERT</code>s, which are in the current transaction anyway, are
+     * sent this way: a failed DDL statement in the same batch could take the
+     * ones before it with it. Other statements are still executed one at a time.
+     */
+    static class StatementPipeline {
+        final List<String> statements = new ArrayList<>();
+
+        static boolean accepts(String sql, MySQLBuffer.Query query) {
+            return (query == null) && sql.startsWith("INSERT INTO ");
+        }
+    }
+
+    void executePipeline(Connection conn, StatementHelper helper, StatementPipeline pipeline,
+                         CommitStatus status, List<String> uncommittedStatements) throws SQLException {
+        if (hasDDL && conn.getAutoCommit()) {
+            conn.setAutoCommit(false);
+        }
+        uncommittedStatements.addAll(pipeline.statements);
+        try {
+            status.pending += helper.executeBatch(pipeline.statements);
+        }
+        catch (BatchUpdateException e) {
+            throw StatementHelper.unwrapBatch(e);
+        }
+        finally {
+            pipeline.statements.clear();
+        }
+        if ((client.getCommitFrequency() > 0) &&
+            (status.pending >= client.getCommitFrequency())) {
+            conn.commit();
+            status.commit();
+            uncommittedStatements.clear();
+        }
+    }
+
     void executeSQL(Connection conn, StatementHelper helper, String sql, CommitStatus status ) throws SQLException {
         if (sql.startsWith("INSERT INTO ")) {
             if (hasDDL && conn.getAutoCommit()) {
@@ -185,42 +406,159 @@ class DumpLoader extends FileLoader
         long start = 0;
         long end = channel.size();
         
+        if (hasDDL && client.getDeferIndexes()) {
+            // Still need to separate out the index DDL.
+            DumpSegmentRangesLoader data = new DumpSegmentRangesLoader();
+            for (SegmentLoader segment : splitSections(1)) {
+                data.add(segment.start, segment.end, segment.startLineNo);
+            }
+            return data;
+        }
         return new DumpSegmentQueryLoader(start, end, 0);
     }
 
     
     public List<? extends SegmentLoader> split (int nsegments) throws IOException {
+        if (hasDDL) {
+            return splitSections(nsegments);
+        }
         return splitParse (nsegments);
     }
+
+    /** Foreign keys must wait for all the data they refer to, from whatever group. */
+    private static boolean isAddForeignKey(String sql) {
+        int index = sql.indexOf(" ADD CONSTRAINT ");
+        return (index > 0) && (sql.indexOf(" FOREIGN KEY", index) > 0);
+    }
+
+    private static boolean isIndexDDL(String sql) {
+        if (sql.startsWith("CREATE INDEX ") || sql.startsWith("CREATE UNIQUE INDEX ")) {
+            return true;
+        }
+        int index = sql.indexOf(" ADD CONSTRAINT ");
+        return sql.startsWith("ALTER TABLE ") && (index > 0) && (sql.indexOf(" UNIQUE ", index) > 0) &&
+            (sql.indexOf(" FOREIGN KEY", index) < 0);
+    }
+
+    @Override
+    SegmentLoader before() {
+        return beforeData;
+    }
+
+    @Override
+    SegmentLoader after() {
+        return afterData;
+    }
+
+    /** A full dump is a series of sections, one per group, each starting with
+     * a <code>---</code> summary. In each, the DDL that comes before the data
+     * goes into {@link #before}, in the same order, and the <code>ALTER TABLE</code>s
+     * after it, as well as all the foreign keys, into {@link #after}.
+     * The data, which no longer depends on anything else, is cut into
+     * pieces to be loaded in parallel.
+     * With <code>--defer-indexes</code>, the secondary indexes are also taken out
+     * of the DDL before the data, to be built all at once afterwards, in parallel
+     * for different groups, rather than maintained row by row. When this
+     * file is one of the DDL files of a dump directory, they are handed to the
+     * client instead, to be built after the data of the whole directory.
+     */
+    protected List<? extends SegmentLoader> splitSections (int nsegments) throws IOException {
+        beforeData = new DumpSegmentRangesLoader();
+        afterData = new DumpSegmentAfterDataLoader();
+        boolean deferIndexes = client.getDeferIndexes();
+        List<DeferredIndexLoader> directoryIndexes = client.getDirectoryIndexes();
+        DumpSegmentRangesLoader sectionIndexes = null;
+        DeferredIndexLoader sectionDirectoryIndexes = null;
+        List<long[]> dataRuns = new ArrayList<>();
+        StatementSplitter statements = new StatementSplitter(channel, client.getEncoding(),
+                                                             BUFFER_SIZE, 0, channel.size());
+        long runStart = 0, runLineNo = 0, dataSize = 0;
+        long section = 0;
+        boolean dataInSection = false;
+        while (statements.next()) {
+            if (statements.getSections() != section) {
+                section = statements.getSections();
+                dataInSection = false;
+                sectionIndexes = null;
+                sectionDirectoryIndexes = null;
+            }
+            String sql = statements.getStatement();
+            long runEnd = statements.getEnd();
+            long nextLineNo = statements.getLineCounter();
+            if (sql.startsWith("INSERT INTO ")) {
+                dataRuns.add(new long[] { runStart, runEnd, runLineNo, section });
+                dataSize += runEnd - runStart;
+                dataInSection = true;
+            }
+            else if (sql.startsWith("ALTER TABLE ") &&
+                     (dataInSection || isAddForeignKey(sql))) {
+                afterData.add(runStart, runEnd, runLineNo);
+            }
+            else if (deferIndexes && !dataInSection && isIndexDDL(sql) && (directoryIndexes != null)) {
+                if (sectionDirectoryIndexes == null) {
+                    sectionDirectoryIndexes = new DeferredIndexLoader(client);
+                    directoryIndexes.add(sectionDirectoryIndexes);
+                }
+                sectionDirectoryIndexes.add(sql, nextLineNo);
+            }
+            else if (deferIndexes && !dataInSection && isIndexDDL(sql)) {
+                if (sectionIndexes == null) {
+                    sectionIndexes = new DumpSegmentRangesLoader();
+                    afterData.indexes.add(sectionIndexes);
+                }
+                sectionIndexes.add(runStart, runEnd, runLineNo);
+            }
+            else {
+                beforeData.add(runStart, runEnd, runLineNo);
+            }
+            runStart = runEnd;
+            runLineNo = nextLineNo;
+        }
+        // Put together consecutive INSERTs from the same group until they are big enough.
+        List<DumpSegmentQueryLoader> segments = new ArrayList<>();
+        long target = Math.max(dataSize / nsegments, 1);
+        long[] piece = null;
+        for (long[] run : dataRuns) {
+            if ((piece != null) &&
+                ((piece[1] != run[0]) || (piece[3] != run[3]) ||
+                 (piece[1] - piece[0] >= target))) {
+                segments.add(new DumpSegmentQueryLoader(piece[0], piece[1], piece[2]));
+                piece = null;
+            }
+            if (piece == null) {
+                piece = run.clone();
+            }
+            else {
+                piece[1] = run[1];
+            }
+        }
+        if (piece != null) {
+            segments.add(new DumpSegmentQueryLoader(piece[0], piece[1], piece[2]));
+        }
+        return segments;
+    }
     
+    /** Cut between statements, as near as possible after equal sized pieces. */
     protected List<? extends SegmentLoader> splitParse (int nsegments) throws IOException {
         List<DumpSegmentQueryLoader> segments = new ArrayList<>(nsegments);
-        long start = 0;
         long end = channel.size();
-        LineReader lines = new LineReader(channel, client.getEncoding(),
-                                          FileLoader.SMALL_BUFFER_SIZE, 1,
-                                          start, end);
-        long mid;
-        long lineNo = 0;
-        while (nsegments > 1) {
-            if ( ((end - start) < nsegments) && ((end - start) > 0)) {
-                mid = start + 1;
-                nsegments = (int)(end - start);
+        StatementSplitter statements = new StatementSplitter(channel, client.getEncoding(),
+                                                             BUFFER_SIZE, 0, end);
+        long start = 0, lineNo = 0;
+        int n = 1;
+        while ((n < nsegments) && statements.next()) {
+            if (statements.getEnd() >= end * n / nsegments) {
+                segments.add(new DumpSegmentQueryLoader(start, statements.getEnd(), lineNo));
+                start = statements.getEnd();
+                lineNo = statements.getLineCounter();
+                while ((n < nsegments) && (start >= end * n / nsegments)) {
+                    n++;
+                }
             }
-            else {
-                mid = start + (end - start) / nsegments;
-            }
-            mid = lines.splitParse (mid);
-            segments.add(new DumpSegmentQueryLoader(start, mid, lineNo));
-            if (mid >= (end - 1))
-                return segments;
-            start = mid;
-            lineNo += lines.getLineCounter();
-            lines.resetLineCounter();
-            lines.position(mid);
-            nsegments--;
-        }
-        segments.add(new DumpSegmentQueryLoader(start, end, lineNo));
+        }
+        if ((start < end) || segments.isEmpty()) {
+            segments.add(new DumpSegmentQueryLoader(start, end, lineNo));
+        }
         return segments;
     }
     
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+import com.foundationdb.sql.client.StatementHelper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts rows one at a time, first checking whether the primary key is
+ * already there. This is the slow second pass, used only for the rows of a
+ * transaction that failed with a duplicate key.
+ */
+class DuplicateResolver
+{
+    private static final String LOAD_COLUMNS_QUERY =
+        "SELECT column_name "+
+        "FROM information_schema.columns "+
+        "WHERE table_schema = ? AND table_name = ? "+
+        "ORDER BY ordinal_position";
+
+    private static final String LOAD_PRIMARY_KEY_QUERY =
+        "SELECT k.column_name "+
+        "FROM information_schema.key_column_usage k "+
+        "INNER JOIN information_schema.table_constraints c USING (constraint_schema, constraint_name) "+
+        "WHERE c.constraint_type = 'PRIMARY KEY' AND k.table_schema = ? AND k.table_name = ? "+
+        "ORDER BY k.ordinal_position";
+
+    private final OnDuplicate mode;
+    private final String schema, table;
+    private List<String> columns;
+    private String insertStatement, existsQuery, updateStatement;
+    private int[] keyFields, updateFields;
+
+    /** @param columns the columns bound by each row, or <code>null</code> for all
+     * of the table's columns in order.
+     */
+    public DuplicateResolver(OnDuplicate mode, String schema, String table, List<String> columns) {
+        assert mode != OnDuplicate.ERROR : mode;
+        this.mode = mode;
+        this.schema = schema;
+        this.table = table;
+        this.columns = columns;
+    }
+
+    /** Load the primary key and build the statements. Done lazily, so a load
+     * without duplicates never queries the schema.
+     */
+    private void prepare(StatementHelper stmt) throws SQLException {
+        if (columns == null) {
+            columns = loadColumns(stmt, LOAD_COLUMNS_QUERY);
+        }
+        List<String> keys = loadColumns(stmt, LOAD_PRIMARY_KEY_QUERY);
+        if (keys.isEmpty()) {
+            throw new SQLException("Table " + table + " has no primary key to find duplicates by");
+        }
+        keyFields = new int[keys.size()];
+        List<Integer> others = new ArrayList<>();
+        for (int i = 0; i < keyFields.length; i++) {
+            keyFields[i] = columns.indexOf(keys.get(i));
+            if (keyFields[i] < 0) {
+                throw new SQLException("Primary key column " + keys.get(i) + " of " + table + " is not loaded");
+            }
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if (!keys.contains(columns.get(i))) {
+                others.add(i);
+            }
+        }
+        StringBuilder where = new StringBuilder(" WHERE ");
+        for (int i = 0; i < keyFields.length; i++) {
+            if (i > 0) where.append(" AND ");
+            appendIdentifier(where, keys.get(i));
+            where.append(" = ?");
+        }
+        StringBuilder sb = new StringBuilder("INSERT INTO ");
+        appendTable(sb);
+        sb.append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) sb.append(", ");
+            appendIdentifier(sb, columns.get(i));
+        }
+        sb.append(") VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append((i > 0) ? ", ?" : "?");
+        }
+        sb.append(")");
+        insertStatement = sb.toString();
+        sb.setLength(0);
+        sb.append("SELECT 1 FROM ");
+        appendTable(sb);
+        sb.append(where);
+        existsQuery = sb.toString();
+        if ((mode == OnDuplicate.UPDATE) && !others.isEmpty()) {
+            updateFields = new int[others.size() + keyFields.length];
+            sb.setLength(0);
+            sb.append("UPDATE ");
+            appendTable(sb);
+            sb.append(" SET ");
+            for (int i = 0; i < others.size(); i++) {
+                if (i > 0) sb.append(", ");
+                appendIdentifier(sb, columns.get(others.get(i)));
+                sb.append(" = ?");
+                updateFields[i] = others.get(i);
+            }
+            System.arraycopy(keyFields, 0, updateFields, others.size(), keyFields.length);
+            sb.append(where);
+            updateStatement = sb.toString();
+        }
+    }
+
+    private List<String> loadColumns(StatementHelper stmt, String query) throws SQLException {
+        List<String> result = new ArrayList<>();
+        ResultSet rs = stmt.executeQueryPrepared(query, schema, table);
+        while (rs.next()) {
+            result.add(rs.getString(1));
+        }
+        rs.close();
+        return result;
+    }
+
+    /** Insert, skip or update a single row, counting which into <code>status</code>. */
+    public void resolve(StatementHelper stmt, String[] row, FileLoader.CommitStatus status) throws SQLException {
+        if (keyFields == null) {
+            prepare(stmt);
+        }
+        if (row.length != columns.size()) {
+            throw new SQLException("Row has " + row.length + " values, but " + table + " has " + columns.size() + " columns");
+        }
+        if (updateStatement != null) {
+            if (stmt.executeUpdatePrepared(updateStatement, select(row, updateFields)) > 0) {
+                status.pendingUpdated++;
+                return;
+            }
+        }
+        else {
+            ResultSet rs = stmt.executeQueryPrepared(existsQuery, select(row, keyFields));
+            boolean exists = rs.next();
+            rs.close();
+            if (exists) {
+                status.pendingSkipped++;
+                return;
+            }
+        }
+        status.pending += stmt.executeUpdatePrepared(insertStatement, row);
+    }
+
+    private static String[] select(String[] row, int[] fields) {
+        String[] result = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            result[i] = row[fields[i]];
+        }
+        return result;
+    }
+
+    /** The table in the schema whose columns were loaded, not the connection's default. */
+    private void appendTable(StringBuilder sb) {
+        appendIdentifier(sb, schema);
+        sb.append('.');
+        appendIdentifier(sb, table);
+    }
+
+    private static void appendIdentifier(StringBuilder sb, String identifier) {
+        sb.append('"').append(identifier.replace("\"", "\"\"")).append('"');
+    }
+}
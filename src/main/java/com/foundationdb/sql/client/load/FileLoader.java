@@ -43,6 +43,21 @@ abstract class FileLoader
 
     abstract List<? extends SegmentLoader> split(int nsegments) throws IOException, LineReader.ParseException;
 
+    /** Work that must be done, in the main thread, after {@link #split} and
+     * before any of the segments are started.
+     * @return <code>null</code> if there is none
+     */
+    SegmentLoader before() throws IOException {
+        return null;
+    }
+
+    /** Work that must wait until all the segments have finished.
+     * @return <code>null</code> if there is none
+     */
+    SegmentLoader after() throws IOException {
+        return null;
+    }
+
     protected Connection getConnection(boolean autoCommit) throws SQLException {
         return client.getConnection(autoCommit);
     }
@@ -56,15 +71,22 @@ abstract class FileLoader
     }
 
     protected class CommitStatus {
-        public int pending;
-        public long count;
+        public int pending, pendingSkipped, pendingUpdated;
+        public long count, skipped, updated;
         public CommitStatus() {
             pending = 0;
             count = 0;
         }
         public void commit() {
             count += pending;
+            skipped += pendingSkipped;
+            updated += pendingUpdated;
+            rollback();
+        }
+        public void rollback() {
             pending = 0;
+            pendingSkipped = 0;
+            pendingUpdated = 0;
         }
     }
 }
@@ -17,7 +17,7 @@ package com.foundationdb.sql.client.load;
 
 public enum Format
 {
-    AUTO("auto"), CSV("CSV"), CSV_HEADER("CSV with header"), MYSQL_DUMP("MySQL"), FDB_SQL("SQL");
+    AUTO("auto"), CSV("CSV"), CSV_HEADER("CSV with header"), MYSQL_DUMP("MySQL"), FDB_SQL("SQL"), ARROW("Arrow");
 
     final String name;
     Format(String name) {
@@ -34,15 +34,13 @@ public class LineReader
     private final CharBuffer chars;
     private long position, limit;
     private long lineCounter;
+    private final int charWidth;
+    private long bytePosition;
 
     public LineReader(FileChannel channel, String encoding) throws IOException {
         this(channel, encoding, SHORT_LINE);
     }
 
-    /** Use this with <code>charSize = 1</code> if ending position
-     * needs to be accurate after each line. It will be slower because
-     * it can only decode one character at a time.
-     */
     public LineReader(FileChannel channel, String encoding, int charSize) throws IOException {
         this(channel, encoding, FileLoader.SMALL_BUFFER_SIZE, charSize, 0, channel.size());
     }
@@ -53,20 +51,61 @@ public class LineReader
             throws IOException {
         this.channel = channel;
         this.decoder = Charset.forName(encoding).newDecoder();
+        this.charWidth = charWidth(decoder.charset());
         this.bytes = ByteBuffer.allocate(byteSize);
-        this.chars = CharBuffer.allocate(charSize);
+        // Without a known width, only decoding one character at a time keeps the position exact.
+        this.chars = CharBuffer.allocate((charWidth < 0) ? 1 : charSize);
         chars.flip();           // Normal state is bytes filling, chars emptying.
         this.position = position;
         this.limit = limit;
         this.lineCounter = 0;
+        this.bytePosition = position;
+    }
+
+    /** Bytes per character: <code>0</code> for UTF-8, where it varies, or
+     * <code>-1</code> if not known.
+     */
+    private static int charWidth(Charset charset) {
+        if ("UTF-8".equals(charset.name())) {
+            return 0;
+        }
+        if (charset.canEncode() && (charset.newEncoder().maxBytesPerChar() == 1.0f)) {
+            return 1;
+        }
+        return -1;
+    }
+
+    private static int utf8Length(char ch) {
+        if (ch < 0x80) {
+            return 1;
+        }
+        else if ((ch < 0x800) || Character.isSurrogate(ch)) {
+            return 2;           // A surrogate pair is 4 bytes in all.
+        }
+        else {
+            return 3;
+        }
     }
 
     public long position() {
         return position;
     }
 
+    /** Continue reading from <code>position</code>, dropping anything read ahead. */
     public void position(long position) {
         this.position = position;
+        this.bytePosition = position;
+        bytes.clear();
+        chars.clear();
+        chars.flip();
+        decoder.reset();
+    }
+
+    /** The file position of the next character that a <code>readLine</code> will
+     * hand over, unlike {@link #position}, which includes whatever has been decoded ahead.
+     */
+    public long bytePosition() {
+        return (charWidth < 0) ? position : bytePosition;
     }
 
     public long limit() {
@@ -99,6 +138,7 @@ public class LineReader
         while (true) {
             while (chars.hasRemaining()) {
                 char ch = chars.get();
+                bytePosition += (charWidth != 0) ? charWidth : utf8Length(ch);
                 if (ch == '\n') {
                     eol = true;
                     lineCounter++;
@@ -134,6 +174,7 @@ public class LineReader
             while (chars.hasRemaining()) {
                 char ch = chars.get();
                 into.append(ch);
+                bytePosition += (charWidth != 0) ? charWidth : utf8Length(ch);
                 if (ch == '\n') {
                     eol = true;
                     lineCounter++;
@@ -156,6 +197,7 @@ public class LineReader
         while (true) {
             while (chars.hasRemaining()) {
                 char ch = chars.get();
+                bytePosition += (charWidth != 0) ? charWidth : utf8Length(ch);
                 if (ch == '\n') {
                     lineCounter++;
                     return true;
@@ -201,11 +243,13 @@ public class LineReader
         long after = -1;
         decoder.reset();
         
-        while (position < point) {
-            before = position;
-            readLine(b);
+        while (bytePosition() < point) {
+            before = bytePosition();
+            if (!readLine(b) && (bytePosition() == before)) {
+                break;
+            }
             b.reset();
-            after = position;
+            after = bytePosition();
         }
         
         if (before < after) {
@@ -220,10 +264,10 @@ public class LineReader
         long after = -1;
         decoder.reset();
 
-        while (position < point) {
-            before = position;
+        while (bytePosition() < point) {
+            before = bytePosition();
             readLine(buffer);
-            after = position;
+            after = bytePosition();
         }
 
         if (before < after) {
@@ -15,6 +15,7 @@
 
 package com.foundationdb.sql.client.load;
 
+import com.foundationdb.sql.client.dump.DumpManifest;
 import com.foundationdb.sql.jdbc.copy.CopyManager;
 
 import java.io.*;
@@ -22,16 +23,24 @@ import java.nio.channels.FileChannel;
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class LoadClient
 {
     private static final String PROGRAM_NAME = "fdbsqlload";
     private static final String encoding = "UTF-8";
 
+    /** How <code>fdbsqldump --data-format=csv</code> writes: <code>NULL</code> is an empty field. */
+    private static final CsvFormat DUMP_CSV_FORMAT = new CsvFormat(',', '"', null, "", false);
+
     private final LoadClientOptions options;
     private final Deque<Connection> connections = new ConcurrentLinkedDeque<>();
     private final List<String> urls;
     private int urlsIterator = 0;
+    private Rejects rejects;
+    private List<DumpLoader.DeferredIndexLoader> directoryIndexes;
 
 
     public static void main(String[] args) throws Exception {
@@ -48,6 +57,7 @@ public class LoadClient
         }
         finally {
             loadClient.clearConnections();
+            loadClient.clearRejects();
         }
     }
 
@@ -59,6 +69,9 @@ public class LoadClient
         if(options.commitFrequency == null) {
             options.commitFrequency = 0L;
         }
+        if(options.batchSize < 1) {
+            options.batchSize = 1;
+        }
         if(options.maxRetries == null) {
             if (options.commitFrequency == 0) {
                 options.maxRetries = 1;
@@ -85,7 +98,66 @@ public class LoadClient
         return options.maxRetries;
     }
 
+    public int getBatchSize() {
+        return options.batchSize;
+    }
+
+    public String getSchema() {
+        return options.schema;
+    }
+
+    public OnDuplicate getOnDuplicate() {
+        return options.onDuplicate;
+    }
+
+    /** Where to put bad rows, or <code>null</code> if they stop the load. */
+    public Rejects getRejects() {
+        return rejects;
+    }
+
+    public boolean getDeferIndexes() {
+        return options.deferIndexes;
+    }
+
+    /** Where the DDL files of a dump directory put their deferred indexes,
+     * or <code>null</code> if each file builds its own.
+     */
+    List<DumpLoader.DeferredIndexLoader> getDirectoryIndexes() {
+        return directoryIndexes;
+    }
+
+    public boolean getPreparedInserts() {
+        return options.preparedInserts;
+    }
+
+    public int getPipeline() {
+        return options.pipeline;
+    }
+
+    public List<String> getColumns() {
+        return options.columns;
+    }
+
+    public CsvFormat getCsvFormat() {
+        String nullString = options.nullString;
+        if (options.emptyAsNull) {
+            if ((nullString != null) && !nullString.isEmpty()) {
+                throw new IllegalArgumentException("Use either --null or --empty-as-null, not both");
+            }
+            nullString = "";
+        }
+        return new CsvFormat(options.delimiter, options.quote, options.escape,
+                             nullString, options.trailingDelimiter);
+    }
+
     public long load(File file) throws Exception {
+        if (file.isDirectory()) {
+            return loadDirectory(file);
+        }
+        return load(file, options.format);
+    }
+
+    protected long load(File file, Format format) throws Exception {
         FileInputStream stream = new FileInputStream(file);
         try {
             FileChannel channel = stream.getChannel();
@@ -96,7 +168,6 @@ public class LoadClient
                 if (idx >= 0)
                     target = target.substring(0, idx);
             }
-            Format format = options.format;
             if (format == Format.AUTO) {
                 String name = file.getName();
                 if (name.endsWith(".csv")) {
@@ -109,6 +180,9 @@ public class LoadClient
                     else
                         format = Format.FDB_SQL;
                 }
+                else if (name.endsWith(".arrow") || name.endsWith(".feather")) {
+                    format = Format.ARROW;
+                }
                 else {
                     throw new Exception("Cannot determine format for " + file + 
                                         ". Use --format explicitly.");
@@ -131,6 +205,17 @@ public class LoadClient
             case FDB_SQL:
                 loader = new DumpLoader(this, channel);
                 break;
+            case ARROW:
+                if (options.maxErrors > 0) {
+                    System.err.println("Arrow import does not support the --max-errors option");
+                    return -1;
+                }
+                if (options.onDuplicate != OnDuplicate.ERROR) {
+                    System.err.println("Arrow import does not support the --on-duplicate option");
+                    return -1;
+                }
+                loader = new ArrowLoader(this, channel, target);
+                break;
             default:
                 assert false : format;
             }
@@ -141,6 +226,14 @@ public class LoadClient
                 System.err.println(ex.getMessage());
                 return -1;
             }
+            long rejectedBefore = 0;
+            if (options.maxErrors > 0) {
+                if (rejects == null) {
+                    rejects = new Rejects(options.maxErrors, options.rejectFile, encoding);
+                }
+                rejects.setSource(file.getPath());
+                rejectedBefore = rejects.getCount();
+            }
             long startTime = System.currentTimeMillis();
             if (!options.quiet) {
                 System.out.println("Loading " + format.name + " file " + file + "...");
@@ -150,32 +243,44 @@ public class LoadClient
                 segments = Collections.singletonList(loader.wholeFile());
             else
                 segments = loader.split(options.nthreads);
-            for (SegmentLoader segment : segments) {
-                segment.prepare();
-            }
-            if (segments.size() == 1) {
-                segments.get(0).run();
+            SegmentLoader before = loader.before();
+            if (before != null) {
+                before.run();
+                if (before.failed) {
+                    return -1;
+                }
             }
-            else {
-                Thread[] threads = new Thread[segments.size()];
-                for (int i = 0; i < threads.length; i++) {
-                    threads[i] = new Thread(segments.get(i));
+            runSegments(segments);
+            SegmentLoader after = loader.after();
+            if (after != null) {
+                boolean failed = false;
+                for (SegmentLoader segment : segments) {
+                    failed |= segment.failed;
                 }
-                for (int i = 0; i < threads.length; i++) {
-                    threads[i].start();
+                if (failed) {
+                    System.err.println("NOTE: Skipped the statements that have to follow all the data.");
                 }
-                for (int i = 0; i < threads.length; i++) {
-                    threads[i].join();
+                else {
+                    after.run();
                 }
             }
             long endTime = System.currentTimeMillis();
-            long total = 0;
+            long total = 0, skipped = 0, updated = 0;
             for (SegmentLoader segment : segments) {
                 total += segment.count;
+                skipped += segment.skipped;
+                updated += segment.updated;
             }
             if (!options.quiet) {
                 System.out.println("... loaded " + total + " rows in " +
                                    (endTime - startTime) / 1.0e3 + " s.");
+                if (rejects != null) {
+                    System.out.println("... rejected " + (rejects.getCount() - rejectedBefore) + " rows.");
+                }
+                if (options.onDuplicate != OnDuplicate.ERROR) {
+                    System.out.println("... skipped " + skipped + " and updated " + updated +
+                                       " rows with duplicate keys.");
+                }
             }
             return total;
         }
@@ -184,6 +289,185 @@ public class LoadClient
         }
     }
 
+    /** Load a directory format dump: its DDL files in order, then the data
+     * of all its groups at once, and then what has to follow the data.
+     * With <code>--group</code>, only the files of those groups are loaded,
+     * not the ones that belong to the whole dump.
+     */
+    public long loadDirectory(File dir) throws Exception {
+        DumpManifest manifest = DumpManifest.read(dir);
+        if (options.groups != null) {
+            Set<String> groups = new HashSet<>();
+            for (DumpManifest.Entry entry : manifest.getEntries()) {
+                groups.add(entry.getGroup());
+            }
+            for (String group : options.groups) {
+                if (!groups.contains(group)) {
+                    throw new Exception("Dump " + dir + " has no group " + group);
+                }
+            }
+        }
+        List<DumpLoader.DeferredIndexLoader> indexes = new ArrayList<>();
+        if (options.deferIndexes) {
+            directoryIndexes = indexes;
+        }
+        try {
+            for (DumpManifest.Entry entry : selectedEntries(manifest, DumpManifest.Kind.DDL)) {
+                if (load(new File(dir, entry.getFileName()), Format.FDB_SQL) < 0) {
+                    return -1;
+                }
+            }
+        }
+        finally {
+            directoryIndexes = null;
+        }
+        List<DumpManifest.Entry> data = selectedEntries(manifest, DumpManifest.Kind.DATA);
+        data.addAll(selectedEntries(manifest, DumpManifest.Kind.CSV));
+        long total = loadDirectoryData(dir, data);
+        if (total < 0) {
+            System.err.println("NOTE: Skipped the statements that have to follow all the data.");
+            return -1;
+        }
+        if (!indexes.isEmpty()) {
+            if (!options.quiet) {
+                System.out.println("Creating the deferred indexes of " + indexes.size() + " groups...");
+            }
+            runSegments(indexes);
+            for (SegmentLoader group : indexes) {
+                if (group.failed) {
+                    System.err.println("Not all deferred indexes could be created");
+                    System.err.println("NOTE: Skipped the statements that have to follow all the data.");
+                    return -1;
+                }
+            }
+        }
+        for (DumpManifest.Entry entry : selectedEntries(manifest, DumpManifest.Kind.AFTER)) {
+            if (load(new File(dir, entry.getFileName()), Format.FDB_SQL) < 0) {
+                return -1;
+            }
+        }
+        return total;
+    }
+
+    private List<DumpManifest.Entry> selectedEntries(DumpManifest manifest, DumpManifest.Kind kind) {
+        List<DumpManifest.Entry> entries = manifest.getEntries(kind);
+        if (options.groups != null) {
+            Iterator<DumpManifest.Entry> iter = entries.iterator();
+            while (iter.hasNext()) {
+                if (!options.groups.contains(iter.next().getGroup())) {
+                    iter.remove();
+                }
+            }
+        }
+        return entries;
+    }
+
+    /** At most this many data files of a dump directory are open at once,
+     * well under the usual limit on open files.
+     */
+    protected static final int MAX_OPEN_FILES = 256;
+
+    /** The data files of a dump directory only have <code>INSERT</code>s,
+     * or are CSV files for a single table, so the pieces of all of them can be
+     * loaded at the same time, or at least as many as can be open at once.
+     */
+    protected long loadDirectoryData(File dir, List<DumpManifest.Entry> entries) throws Exception {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        long startTime = System.currentTimeMillis();
+        if (!options.quiet) {
+            System.out.println("Loading data of " + entries.size() + " files from " + dir + "...");
+        }
+        long total = 0;
+        for (int from = 0; from < entries.size(); from += MAX_OPEN_FILES) {
+            long count = loadDirectoryFiles(dir, entries.subList(from, Math.min(from + MAX_OPEN_FILES, entries.size())));
+            if (count < 0) {
+                return -1;
+            }
+            total += count;
+        }
+        long endTime = System.currentTimeMillis();
+        if (!options.quiet) {
+            System.out.println("... loaded " + total + " rows in " +
+                               (endTime - startTime) / 1.0e3 + " s.");
+        }
+        return total;
+    }
+
+    protected long loadDirectoryFiles(File dir, List<DumpManifest.Entry> entries) throws Exception {
+        List<FileInputStream> streams = new ArrayList<>();
+        try {
+            List<SegmentLoader> segments = new ArrayList<>();
+            for (DumpManifest.Entry entry : entries) {
+                FileInputStream stream = new FileInputStream(new File(dir, entry.getFileName()));
+                streams.add(stream);
+                FileLoader loader;
+                if (entry.getKind() == DumpManifest.Kind.CSV) {
+                    loader = new CsvLoader(this, stream.getChannel(), entry.getSchema(), entry.getTable(),
+                                           true, DUMP_CSV_FORMAT);
+                }
+                else {
+                    loader = new DumpLoader(this, stream.getChannel());
+                }
+                try {
+                    loader.checkFormat();
+                }
+                catch (UnsupportedOperationException ex) {
+                    System.err.println(ex.getMessage());
+                    return -1;
+                }
+                if (options.nthreads == 1)
+                    segments.add(loader.wholeFile());
+                else
+                    segments.addAll(loader.split(options.nthreads));
+            }
+            runSegments(segments);
+            long total = 0;
+            boolean failed = false;
+            for (SegmentLoader segment : segments) {
+                total += segment.count;
+                failed |= segment.failed;
+            }
+            return failed ? -1 : total;
+        }
+        finally {
+            for (FileInputStream stream : streams) {
+                stream.close();
+            }
+        }
+    }
+
+    protected void runSegments(List<? extends SegmentLoader> segments) throws Exception {
+        for (SegmentLoader segment : segments) {
+            segment.prepare();
+        }
+        if (segments.size() == 1) {
+            segments.get(0).run();
+        }
+        else if (segments.size() <= options.nthreads) {
+            Thread[] threads = new Thread[segments.size()];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(segments.get(i));
+            }
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].start();
+            }
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].join();
+            }
+        }
+        else {
+            // More pieces than threads: each thread takes the next one when done.
+            ExecutorService pool = Executors.newFixedThreadPool(options.nthreads);
+            for (SegmentLoader segment : segments) {
+                pool.execute(segment);
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+
     protected Connection getConnection(boolean autoCommit) throws SQLException {
         Connection connection = connections.poll();
         if (connection == null) {
@@ -217,13 +501,20 @@ public class LoadClient
             connection.close();
     }
 
-    protected void clearConnections() throws SQLException {
+    public void clearConnections() throws SQLException {
         
         for (Connection connection : connections) {
             connection.close();
         }
     }
 
+    protected void clearRejects() throws IOException {
+        if (rejects != null) {
+            rejects.close();
+            rejects = null;
+        }
+    }
+
     protected CopyManager getCopyManager(Connection connection) throws SQLException {
         return new CopyManager((com.foundationdb.sql.jdbc.core.BaseConnection)connection);
     }
@@ -32,6 +32,7 @@ import java.util.List;
 public class LoadClientOptions extends ClientOptionsBase
 {
     public static final int COMMIT_AUTO = -1;
+    public static final int DEFAULT_BATCH_SIZE = 100;
 
     public static class FormatConverter extends BaseConverter<Format>
     {
@@ -45,6 +46,18 @@ public class LoadClientOptions extends ClientOptionsBase
         }
     }
 
+    public static class OnDuplicateConverter extends BaseConverter<OnDuplicate>
+    {
+        public OnDuplicateConverter(String optionName) {
+            super(optionName);
+        }
+
+        @Override
+        public OnDuplicate convert(String value) {
+            return OnDuplicate.fromName(value);
+        }
+    }
+
     public static class CommitConverter extends BaseConverter<Long>
     {
         public CommitConverter(String optionName) {
@@ -57,6 +70,27 @@ public class LoadClientOptions extends ClientOptionsBase
         }
     }
 
+    public static class CharacterConverter extends BaseConverter<Character>
+    {
+        public CharacterConverter(String optionName) {
+            super(optionName);
+        }
+
+        @Override
+        public Character convert(String value) {
+            if (value.isEmpty() || "none".equalsIgnoreCase(value)) {
+                return null;
+            }
+            if ("\\t".equals(value) || "tab".equalsIgnoreCase(value)) {
+                return '\t';
+            }
+            if (value.length() != 1) {
+                throw new ParameterException(getErrorString(value, "a single character"));
+            }
+            return value.charAt(0);
+        }
+    }
+
     public static class ConstraintCheckTimeValidator implements IParameterValidator
     {
         @Override
@@ -99,6 +133,27 @@ public class LoadClientOptions extends ClientOptionsBase
     @Parameter(names = "--header", description = "CSV file has header")
     public boolean header;
 
+    @Parameter(names = "--delimiter", description = "CSV field delimiter (tab allowed)", converter = CharacterConverter.class)
+    public Character delimiter = ',';
+
+    @Parameter(names = "--quote", description = "CSV quote character (none to disable)", converter = CharacterConverter.class)
+    public Character quote = '"';
+
+    @Parameter(names = "--escape", description = "CSV escape character (default is doubled quote)", converter = CharacterConverter.class)
+    public Character escape;
+
+    @Parameter(names = "--null", description = "unquoted CSV field text that means NULL")
+    public String nullString;
+
+    @Parameter(names = "--empty-as-null", description = "unquoted empty CSV fields are NULL (quoted ones stay empty)")
+    public boolean emptyAsNull;
+
+    @Parameter(names = "--trailing-delimiter", description = "CSV lines end with an extra delimiter")
+    public boolean trailingDelimiter;
+
+    @Parameter(names = "--columns", description = "target columns for the CSV fields in order (- skips a field), or the header or Arrow fields to load")
+    public List<String> columns;
+
     @Parameter(names = { "-t", "--into" }, description = "target table name")
     public String target;
 
@@ -108,6 +163,30 @@ public class LoadClientOptions extends ClientOptionsBase
     @Parameter(names = { "-c", "--commit" }, description = "commit every n rows", converter = CommitConverter.class)
     public Long commitFrequency;
 
+    @Parameter(names = "--batch-size", description = "number of CSV rows (or dump INSERTs with --prepared-inserts) sent per batch")
+    public int batchSize = DEFAULT_BATCH_SIZE;
+
+    @Parameter(names = "--on-duplicate", description = "what to do with rows whose primary key exists: error, skip or update", converter = OnDuplicateConverter.class)
+    public OnDuplicate onDuplicate = OnDuplicate.ERROR;
+
+    @Parameter(names = "--max-errors", description = "number of bad CSV rows to reject before giving up")
+    public long maxErrors;
+
+    @Parameter(names = "--reject-file", description = "where to write rejected rows (default standard error)")
+    public File rejectFile;
+
+    @Parameter(names = "--defer-indexes", description = "create secondary indexes of a full dump or dump directory after its data")
+    public boolean deferIndexes;
+
+    @Parameter(names = "--prepared-inserts", description = "send dump INSERTs as batches of prepared statements")
+    public boolean preparedInserts;
+
+    @Parameter(names = "--pipeline", description = "number of dump INSERTs sent before waiting for their results")
+    public int pipeline = 1;
+
+    @Parameter(names = "--group", description = "from a dump directory, load just this group, named schema.table by its root (can be repeated)")
+    public List<String> groups;
+
     @Parameter(names = { "-r", "--retry" }, description = "number of times to try on transaction error")
     public Integer maxRetries;
 
@@ -117,6 +196,6 @@ public class LoadClientOptions extends ClientOptionsBase
     @Parameter(names = { "--constraint-check-time" }, description = "when to check uniqueness constraints", validateWith = ConstraintCheckTimeValidator.class)
     public String constraintCheckTime = "DEFERRED_WITH_RANGE_CACHE";
 
-    @Parameter(description = "file(s)", required = true)
+    @Parameter(description = "file(s) or dump directories", required = true)
     public List<File> files = new ArrayList<>();
 }
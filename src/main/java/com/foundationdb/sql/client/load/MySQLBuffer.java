@@ -37,6 +37,8 @@ public class MySQLBuffer implements StatementBuffer<MySQLBuffer.Query> {
     private StringBuilder rowBuffer;
     private StringBuilder currentField = new StringBuilder();
     private StringBuilder preparedStatement = new StringBuilder();
+    private String tableName;
+    private int rowCount;
     private Query query;
     private char quoteChar;
     private State state;
@@ -58,12 +60,14 @@ public class MySQLBuffer implements StatementBuffer<MySQLBuffer.Query> {
     }
 
     private void reset(int endIndex) {
-        query = new Query(preparedStatement.toString(), values.toArray(emptyStringForToArray));
+        query = new Query(preparedStatement.toString(), tableName, rowCount, values.toArray(emptyStringForToArray));
         if (endIndex >= 0) {
             rowBuffer.delete(0,endIndex);
             currentIndex -= endIndex;
         }
         preparedStatement.setLength(0);
+        tableName = null;
+        rowCount = 0;
         values.clear();
         firstRow = true;
         firstField = true;
@@ -307,6 +311,7 @@ public class MySQLBuffer implements StatementBuffer<MySQLBuffer.Query> {
     private void handleRowStart(char c) throws UnexpectedTokenException {
         if (c == '(') {
             firstField = true;
+            rowCount++;
             if (firstRow) {
                 preparedStatement.append("(");
                 firstRow = false;
@@ -333,12 +338,12 @@ public class MySQLBuffer implements StatementBuffer<MySQLBuffer.Query> {
 
     private void handleField(char c) throws UnexpectedTokenException {
         if (c == ')') {
-            addField();
+            addUnquotedField();
             endRow();
             swallowWhitespace = true;
             state = State.AFTER_ROW;
         } else if (c == ',') {
-            addField();
+            addUnquotedField();
             swallowWhitespace = true;
             state = State.FIELD_START;
         } else if (isQuote(c)) {
@@ -447,6 +452,7 @@ public class MySQLBuffer implements StatementBuffer<MySQLBuffer.Query> {
     }
 
     private void setTableName() {
+        tableName = currentField.toString();
         preparedStatement.append('"');
         preparedStatement.append(currentField.toString().replaceAll("\"", "\"\""));
         preparedStatement.append('"');
@@ -459,22 +465,40 @@ public class MySQLBuffer implements StatementBuffer<MySQLBuffer.Query> {
     }
 
     private void addField() {
+        addField(currentField.toString());
+    }
+
+    /** Unquoted <code>NULL</code> is the SQL NULL literal, not a string. */
+    private void addUnquotedField() {
+        String value = currentField.toString();
+        addField(value.equalsIgnoreCase("NULL") ? null : value);
+    }
+
+    private void addField(String value) {
         if (firstField) {
             preparedStatement.append("?");
             firstField = false;
         } else {
             preparedStatement.append(", ?");
         }
-        values.add(currentField.toString());
+        values.add(value);
     }
 
 
     public static class Query {
         private String preparedStatement;
+        private String tableName;
+        private int rowCount;
         private String[] values;
 
         public Query(String preparedStatement, String[] values) {
+            this(preparedStatement, null, 1, values);
+        }
+
+        public Query(String preparedStatement, String tableName, int rowCount, String[] values) {
             this.preparedStatement = preparedStatement;
+            this.tableName = tableName;
+            this.rowCount = rowCount;
             this.values = values;
         }
 
@@ -482,6 +506,23 @@ public class MySQLBuffer implements StatementBuffer<MySQLBuffer.Query> {
             return preparedStatement;
         }
 
+        public String getTableName() {
+            return tableName;
+        }
+
+        /** The values of each of the <code>INSERT</code>'s rows, in turn. */
+        public List<String[]> getRows() {
+            List<String[]> rows = new ArrayList<>(rowCount);
+            if (rowCount == 0) {
+                return rows;
+            }
+            int width = values.length / rowCount;
+            for (int i = 0; i < rowCount; i++) {
+                rows.add(Arrays.copyOfRange(values, i * width, (i + 1) * width));
+            }
+            return rows;
+        }
+
         public String[] getValues() {
             return values;
         }
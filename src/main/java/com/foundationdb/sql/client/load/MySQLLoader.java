@@ -22,7 +22,9 @@ import java.nio.channels.FileChannel;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 class MySQLLoader extends FileLoader
 {
@@ -66,8 +68,9 @@ class MySQLLoader extends FileLoader
         long start = 0;
         long end = channel.size();
         LineReader lines = new LineReader(channel, client.getEncoding(),
-                FileLoader.SMALL_BUFFER_SIZE, 1,
+                BUFFER_SIZE, BUFFER_SIZE,
                 start, end);
+        long lineNo = 0;
         long mid;
         while (nsegments > 1) {
             if ( ((end - start) < nsegments) && ((end - start) > 0)) {
@@ -78,20 +81,25 @@ class MySQLLoader extends FileLoader
                 mid = start + (end - start) / nsegments;
             }
             mid = lines.splitParse(mid, new MySQLBuffer());
-            segments.add(new MySQLSegmentLoader(start, mid, lines.getLineCounter()));
+            segments.add(new MySQLSegmentLoader(start, mid, lineNo));
             if (mid >= (end - 1))
                 return segments;
             start = mid;
+            lineNo = lines.getLineCounter();
             lines.position(mid);
             nsegments--;
         }
-        segments.add(new MySQLSegmentLoader(start, end, lines.getLineCounter()));
+        segments.add(new MySQLSegmentLoader(start, end, lineNo));
         return segments;
     }
 
     protected class MySQLSegmentLoader extends SegmentLoader {
+        private final Map<String,DuplicateResolver> duplicates;
+        private boolean resolvingDuplicates;
+
         public MySQLSegmentLoader(long start, long end, long startLineNo) {
             super(MySQLLoader.this.client, MySQLLoader.this.channel, start, end, startLineNo);
+            duplicates = (client.getOnDuplicate() == OnDuplicate.ERROR) ? null : new HashMap<String,DuplicateResolver>();
         }
 
         @Override
@@ -124,7 +132,7 @@ class MySQLLoader extends FileLoader
                          }
                      } catch (SQLException e) {
                          if (!connection.getAutoCommit()) connection.rollback();
-                         if (StatementHelper.shouldRetry(e, client.getMaxRetries() > 0)) {
+                         if (isResolvable(e) || StatementHelper.shouldRetry(e, client.getMaxRetries() > 0)) {
                              retry(connection, stmt, status, uncommittedStatements, e);
                          } else {
                              throw(e);
@@ -138,7 +146,7 @@ class MySQLLoader extends FileLoader
                          status.commit();
                      } catch (SQLException e) {
                          if (!connection.getAutoCommit()) connection.rollback();
-                         if (StatementHelper.shouldRetry(e, client.getMaxRetries() > 0)) {
+                         if (isResolvable(e) || StatementHelper.shouldRetry(e, client.getMaxRetries() > 0)) {
                              retry(connection, stmt, status, uncommittedStatements, e);
                          } else {
                              throw(e);
@@ -148,8 +156,7 @@ class MySQLLoader extends FileLoader
                  success = true;
             }
             catch (Exception ex) {
-                // todo startLineNo
-                throw new DumpLoaderException(lines.getLineCounter(), query == null ? null : query.toString(), ex);
+                throw new DumpLoaderException(startLineNo + lines.getLineCounter(), query == null ? null : query.toString(), ex);
             }
             finally {
                  if (stmt != null) {
@@ -162,25 +169,55 @@ class MySQLLoader extends FileLoader
                  }
             }
             count += status.count;
+            skipped += status.skipped;
+            updated += status.updated;
+        }
+
+        /** A duplicate key that the second pass, one row at a time, can deal with. */
+        private boolean isResolvable(SQLException e) {
+            return (duplicates != null) && !resolvingDuplicates && StatementHelper.isDuplicateKey(e);
+        }
+
+        private void resolve(StatementHelper stmt, CommitStatus status, MySQLBuffer.Query query) throws SQLException {
+            DuplicateResolver resolver = duplicates.get(query.getTableName());
+            if (resolver == null) {
+                resolver = new DuplicateResolver(client.getOnDuplicate(), client.getSchema(),
+                                                 query.getTableName(), null);
+                duplicates.put(query.getTableName(), resolver);
+            }
+            for (String[] row : query.getRows()) {
+                resolver.resolve(stmt, row, status);
+            }
         }
 
         private void retry(Connection connection, StatementHelper stmt, CommitStatus status,
                            List<MySQLBuffer.Query> uncommittedStatements, SQLException e) throws SQLException {
-            for (int i = 0; StatementHelper.shouldRetry(e, i < client.getMaxRetries()); i++) {
-                status.pending = 0;
+            for (int i = 0; isResolvable(e) || StatementHelper.shouldRetry(e, i < client.getMaxRetries()); i++) {
+                if (isResolvable(e)) {
+                    // Not a retry: go through the rows again, checking for duplicates.
+                    resolvingDuplicates = true;
+                    i--;
+                }
+                status.rollback();
                 try {
                     for (MySQLBuffer.Query query : uncommittedStatements) {
-                        status.pending += stmt.executeUpdatePrepared(query.getPreparedStatement(), query.getValues());
+                        if (resolvingDuplicates) {
+                            resolve(stmt, status, query);
+                        }
+                        else {
+                            status.pending += stmt.executeUpdatePrepared(query.getPreparedStatement(), query.getValues());
+                        }
                     }
-                    if (status.pending > 0) {
+                    if (status.pending + status.pendingSkipped + status.pendingUpdated > 0) {
                         connection.commit();
                         status.commit();
                     }
                     uncommittedStatements.clear();
+                    resolvingDuplicates = false;
                     return;
                 } catch (SQLException newE) {
                     if (!connection.getAutoCommit()) connection.rollback();
-                    if (!StatementHelper.shouldRetry(newE, true)) {
+                    if (!isResolvable(newE) && !StatementHelper.shouldRetry(newE, true)) {
                         throw(newE);
                     }
                     e = newE;
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+/** What to do with a row whose primary key is already in the table. */
+public enum OnDuplicate
+{
+    ERROR("error"), SKIP("skip"), UPDATE("update");
+
+    final String name;
+    OnDuplicate(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    public static OnDuplicate fromName(String name) {
+        for (OnDuplicate mode : values()) {
+            if (name.equalsIgnoreCase(mode.name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown duplicate handling: " + name);
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+
+/**
+ * Rows that could not be loaded, shared by all the segments of a load.
+ * Each is written as a comment line giving where it came from and why it failed,
+ * followed by its original text, so that it can be fixed and loaded again.
+ */
+class Rejects
+{
+    private final long maxErrors;
+    private final OutputStream output;
+    private final Charset charset;
+    private String source;
+    private long count;
+
+    /** @param file where to write rejected rows, or <code>null</code> for standard error. */
+    public Rejects(long maxErrors, File file, String encoding) throws IOException {
+        this.maxErrors = maxErrors;
+        this.output = (file == null) ? System.err : new FileOutputStream(file);
+        this.charset = Charset.forName(encoding);
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /** Record the row at <code>[start,end)</code> in <code>channel</code>.
+     * @param lineNo 1-based line on which the row starts
+     * @throws SQLException once there have been more than the maximum number of errors
+     */
+    public synchronized void reject(FileChannel channel, long lineNo, long start, long end,
+                                    Exception cause) throws IOException, SQLException {
+        if (++count > maxErrors) {
+            throw new SQLException("Too many rejected rows (more than " + maxErrors + ")", cause);
+        }
+        StringBuilder header = new StringBuilder("# ");
+        if (source != null) {
+            header.append(source).append(' ');
+        }
+        header.append("line ").append(lineNo);
+        if (start >= 0) {
+            header.append(", byte ").append(start);
+        }
+        header.append(": ").append(cause.getMessage().replace('\n', ' ')).append('\n');
+        output.write(header.toString().getBytes(charset));
+        if ((start >= 0) && (end > start)) {
+            ByteBuffer row = ByteBuffer.allocate((int)(end - start));
+            while (row.hasRemaining() && (channel.read(row, start + row.position()) > 0)) {
+            }
+            output.write(row.array(), 0, row.position());
+            if ((row.position() == 0) || (row.get(row.position() - 1) != '\n')) {
+                output.write('\n');
+            }
+        }
+        output.flush();
+    }
+
+    public void close() throws IOException {
+        if (output != System.err) {
+            output.close();
+        }
+    }
+}
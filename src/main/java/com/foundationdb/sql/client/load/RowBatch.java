@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Parsed rows kept as the text of all their fields in one array, with the
+ * bounds of each field in another, instead of as a <code>String</code> per
+ * field. The arrays are kept by {@link #clear} to be filled again, so a
+ * segment loader allocates next to nothing per row until the rows are bound,
+ * when {@link #get} turns just that one into <code>String</code>s.
+ */
+class RowBatch extends AbstractList<String[]> implements RandomAccess
+{
+    private char[] text = new char[FileLoader.BUFFER_SIZE];
+    private int textLength;
+    /** <code>start, end</code> of each field in turn, with <code>end &lt; 0</code> for <code>NULL</code>. */
+    private int[] bounds = new int[1024];
+    private int boundsLength;
+    /** Where each row's fields start in {@link #bounds}, plus one past the last. */
+    private int[] rows = new int[257];
+    private int size;
+
+    /** Add a row whose <code>nfields</code> fields are given by <code>fieldBounds</code>
+     * into <code>fieldText</code>, as above.
+     */
+    public void add(CharSequence fieldText, int textStart, int textEnd,
+                    int[] fieldBounds, int nfields) {
+        int length = textEnd - textStart;
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+        }
+        if (boundsLength + 2 * nfields > bounds.length) {
+            bounds = Arrays.copyOf(bounds, Math.max(bounds.length * 2, boundsLength + 2 * nfields));
+        }
+        if (size + 2 > rows.length) {
+            rows = Arrays.copyOf(rows, rows.length * 2);
+        }
+        if (fieldText instanceof StringBuilder) {
+            ((StringBuilder)fieldText).getChars(textStart, textEnd, text, textLength);
+        }
+        else {
+            for (int i = 0; i < length; i++) {
+                text[textLength + i] = fieldText.charAt(textStart + i);
+            }
+        }
+        int offset = textLength - textStart;
+        for (int i = 0; i < 2 * nfields; i += 2) {
+            int end = fieldBounds[i + 1];
+            if (end < 0) {
+                bounds[boundsLength + i] = 0;
+                bounds[boundsLength + i + 1] = -1;
+            }
+            else {
+                bounds[boundsLength + i] = fieldBounds[i] + offset;
+                bounds[boundsLength + i + 1] = end + offset;
+            }
+        }
+        textLength += length;
+        boundsLength += 2 * nfields;
+        rows[size + 1] = boundsLength;
+        size++;
+    }
+
+    /** The values of the <code>index</code>'th row, made anew each time. */
+    @Override
+    public String[] get(int index) {
+        if ((index < 0) || (index >= size)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int from = rows[index], to = rows[index + 1];
+        String[] values = new String[(to - from) / 2];
+        for (int i = 0; i < values.length; i++) {
+            int start = bounds[from + 2 * i], end = bounds[from + 2 * i + 1];
+            if (end >= 0) {
+                values[i] = new String(text, start, end - start);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Forget all the rows, but keep the storage for the next ones. */
+    @Override
+    public void clear() {
+        textLength = 0;
+        boundsLength = 0;
+        size = 0;
+    }
+}
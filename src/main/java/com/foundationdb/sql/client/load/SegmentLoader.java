@@ -28,7 +28,8 @@ abstract class SegmentLoader implements Runnable
     protected final long start;
     protected final long end;
     protected final long startLineNo;
-    protected long count;
+    protected long count, skipped, updated;
+    protected boolean failed;
 
     protected SegmentLoader(LoadClient client, FileChannel channel, long start, long end, long startLineNo) {
         this.client = client;
@@ -53,6 +54,7 @@ abstract class SegmentLoader implements Runnable
         try {
             runSegment();
         } catch (Exception ex) {
+            failed = true;
             if (ex instanceof DumpLoaderException) {
                 System.err.println("ERROR: During query that ends on line " +
                         ((DumpLoaderException) ex).getLineNo() + ", starting with:");
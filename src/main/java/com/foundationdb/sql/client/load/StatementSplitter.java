@@ -0,0 +1,310 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Cuts part of a SQL script into statements in a single pass over its bytes.
+ * Unlike {@link com.foundationdb.sql.client.cli.QueryBuffer}, which is meant
+ * for the interactive client and rescans what it has been given after every line,
+ * this never decodes anything but the text of each statement, once.
+ * Quotes (<code>'</code>, <code>E'</code>, <code>"</code>, <code>`</code> and
+ * <code>$$</code>) and nested <code>/* *&#47;</code> comments are kept as is,
+ * while <code>--</code> comments are dropped.
+ * All the special characters are ASCII, so the encoding must be one where
+ * they are single bytes that do not occur inside other characters, like UTF-8.
+ */
+class StatementSplitter
+{
+    private static final byte[] SPECIAL = { ';', '\'', '"', '`', '$', '-', '/', '*', '\\', '\n' };
+
+    private final FileChannel channel;
+    private final Charset charset;
+    private final ByteBuffer bytes;
+    private long position, limit;
+    private byte[] statement = new byte[FileLoader.SMALL_BUFFER_SIZE];
+    private int length;
+    private String text;
+    private long start, end;
+    private long lineCounter, sections;
+    private boolean atLineStart = true;
+
+    public StatementSplitter(FileChannel channel, String encoding,
+                             int byteSize, long position, long limit) {
+        this.channel = channel;
+        this.charset = Charset.forName(encoding);
+        if (!Arrays.equals(SPECIAL, new String(SPECIAL, charset).getBytes(charset))) {
+            throw new UnsupportedOperationException("Cannot split SQL statements in " + encoding);
+        }
+        this.bytes = ByteBuffer.allocate(byteSize);
+        bytes.flip();
+        this.position = position;
+        this.limit = limit;
+    }
+
+    /** Advance to the next statement.
+     * @return <code>false</code> if only whitespace and comments are left
+     */
+    public boolean next() throws IOException {
+        length = 0;
+        text = null;
+        int b;
+        // Skip to the start of the statement.
+        while (true) {
+            boolean lineStart = atLineStart;
+            b = read();
+            if (b < 0) {
+                return false;
+            }
+            if (b == '-') {
+                if (peek() == '-') {
+                    read();
+                    if (lineStart && (peek() == '-')) {
+                        sections++;
+                    }
+                    skipLine();
+                    continue;
+                }
+            }
+            else if ((b == '\n') || (b == '\r') || (b == ' ') || (b == '\t')) {
+                continue;
+            }
+            break;
+        }
+        start = position - 1;
+        // Then to its end.
+        boolean ident = false;
+        int depth;
+        while (b >= 0) {
+            switch (b) {
+            case ';':
+                append(b);
+                end = position;
+                return true;
+            case '\'':
+                append(b);
+                quoted(b, ident && isE(statement[length - 2]) && !isIdentifierAt(length - 3));
+                break;
+            case '"':
+            case '`':
+                append(b);
+                quoted(b, false);
+                break;
+            case '$':
+                append(b);
+                if (!ident && (peek() == '$')) {
+                    append(read());
+                    dollarQuoted();
+                }
+                break;
+            case '-':
+                if (peek() == '-') {
+                    read();
+                    skipLine();
+                    append('\n');
+                }
+                else {
+                    append(b);
+                }
+                break;
+            case '/':
+                append(b);
+                if (peek() == '*') {
+                    append(read());
+                    depth = 1;
+                    while ((depth > 0) && (scanTo((byte)'*', (byte)'/', true) >= 0)) {
+                        b = read();
+                        append(b);
+                        if ((b == '*') && (peek() == '/')) {
+                            append(read());
+                            depth--;
+                        }
+                        else if ((b == '/') && (peek() == '*')) {
+                            append(read());
+                            depth++;
+                        }
+                    }
+                }
+                break;
+            default:
+                append(b);
+            }
+            ident = isIdentifier(b);
+            b = read();
+        }
+        // A last statement without its semicolon.
+        end = position;
+        while ((length > 0) && (statement[length - 1] <= ' ')) {
+            length--;
+        }
+        return true;
+    }
+
+    /** The current statement, including its semicolon, without any <code>--</code> comments. */
+    public String getStatement() {
+        if (text == null) {
+            text = new String(statement, 0, length, charset);
+        }
+        return text;
+    }
+
+    /** Byte position of the start of the current statement. */
+    public long getStart() {
+        return start;
+    }
+
+    /** Byte position just after the end of the current statement. */
+    public long getEnd() {
+        return end;
+    }
+
+    /** The number of newlines before {@link #getEnd}. */
+    public long getLineCounter() {
+        return lineCounter;
+    }
+
+    /** The number of <code>---</code> comments starting a line seen so far.
+     * A dump starts each group with these, so a change means a new one.
+     */
+    public long getSections() {
+        return sections;
+    }
+
+    private void quoted(int quote, boolean escapes) throws IOException {
+        while (scanTo((byte)quote, escapes ? (byte)'\\' : (byte)quote, true) >= 0) {
+            int b = read();
+            append(b);
+            if (b == quote) {
+                return;
+            }
+            b = read();
+            if (b < 0) {
+                return;
+            }
+            append(b);
+        }
+    }
+
+    private void dollarQuoted() throws IOException {
+        while (scanTo((byte)'$', (byte)'$', true) >= 0) {
+            append(read());
+            if (peek() == '$') {
+                append(read());
+                return;
+            }
+        }
+    }
+
+    private void skipLine() throws IOException {
+        if (scanTo((byte)'\n', (byte)'\n', false) >= 0) {
+            read();
+        }
+    }
+
+    /** Go up to the next <code>a</code> or <code>b</code>, whole buffers at a time.
+     * @return that byte, still to be read, or <code>-1</code> at the end
+     */
+    private int scanTo(byte a, byte b, boolean keep) throws IOException {
+        while (bytes.hasRemaining() || fill()) {
+            int from = bytes.position();
+            int found = ByteScanner.indexOf(bytes, from, bytes.limit(), a, b);
+            int to = (found < 0) ? bytes.limit() : found;
+            if (to > from) {
+                if (keep) {
+                    if (length + (to - from) > statement.length) {
+                        statement = Arrays.copyOf(statement, Math.max(length * 2, length + (to - from)));
+                    }
+                    bytes.get(statement, length, to - from);
+                    length += to - from;
+                }
+                else {
+                    bytes.position(to);
+                }
+                lineCounter += ByteScanner.count(bytes, from, to, (byte)'\n');
+                atLineStart = (bytes.get(to - 1) == '\n');
+                position += to - from;
+            }
+            if (found >= 0) {
+                return bytes.get(found) & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isE(byte b) {
+        return (b == 'E') || (b == 'e');
+    }
+
+    private static boolean isIdentifier(int b) {
+        return ((b >= 'a') && (b <= 'z')) || ((b >= 'A') && (b <= 'Z')) ||
+            ((b >= '0') && (b <= '9')) || (b == '_') || (b >= 0x80);
+    }
+
+    private boolean isIdentifierAt(int index) {
+        return (index >= 0) && isIdentifier(statement[index] & 0xFF);
+    }
+
+    private void append(int b) {
+        if (length == statement.length) {
+            statement = Arrays.copyOf(statement, length * 2);
+        }
+        statement[length++] = (byte)b;
+    }
+
+    private int read() throws IOException {
+        if (!bytes.hasRemaining() && !fill()) {
+            return -1;
+        }
+        int b = bytes.get() & 0xFF;
+        position++;
+        atLineStart = (b == '\n');
+        if (atLineStart) {
+            lineCounter++;
+        }
+        return b;
+    }
+
+    private int peek() throws IOException {
+        if (!bytes.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return bytes.get(bytes.position()) & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        long from = position;
+        if (from >= limit) {
+            return false;
+        }
+        bytes.clear();
+        if (limit - from < bytes.capacity()) {
+            bytes.limit((int)(limit - from));
+        }
+        while (bytes.hasRemaining()) {
+            int nb = channel.read(bytes, from + bytes.position());
+            if (nb < 0) {
+                break;
+            }
+        }
+        bytes.flip();
+        return bytes.hasRemaining();
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+package com.foundationdb.sql.client.dump;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CatalogSnapshotTest {
+
+    @Test
+    public void roundTrip() throws IOException {
+        File file = File.createTempFile("catalog-", ".ser");
+        file.deleteOnExit();
+        file.delete();
+        assertNull(CatalogSnapshot.read(file));
+
+        CatalogSnapshot snapshot = new CatalogSnapshot("jdbc:fdbsql://localhost/test");
+        assertFalse(snapshot.isChanged());
+        snapshot.checkMarker("test", "m1");
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[] { "`test`", "customers", null });
+        snapshot.put(rows, "SELECT x FROM t WHERE s = ?", "test");
+        assertTrue(snapshot.isChanged());
+        snapshot.write(file);
+        assertFalse(snapshot.isChanged());
+
+        CatalogSnapshot read = CatalogSnapshot.read(file);
+        assertNotNull(read);
+        assertTrue(read.matches("jdbc:fdbsql://localhost/test"));
+        assertFalse(read.matches("jdbc:fdbsql://otherhost/test"));
+        assertFalse(read.isChanged());
+        assertEquals("m1", read.getMarker("test"));
+        read.checkMarker("test", "m1");
+        assertFalse(read.isChanged());
+        List<String[]> readRows = read.get("SELECT x FROM t WHERE s = ?", "test");
+        assertEquals(1, readRows.size());
+        assertArrayEquals(rows.get(0), readRows.get(0));
+        assertNull(read.get("SELECT x FROM t WHERE s = ?", "other"));
+    }
+
+    @Test
+    public void markerChange() {
+        CatalogSnapshot snapshot = new CatalogSnapshot("jdbc:fdbsql://localhost/test");
+        snapshot.checkMarker("a", "m1");
+        snapshot.checkMarker("b", "m1");
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[] { "t" });
+        snapshot.put(rows, "SELECT x FROM t WHERE s = ? AND u = ?", "a", "b");
+        snapshot.put(rows, "SELECT x FROM t WHERE s = ? AND u = ?", "b", "a");
+        snapshot.checkMarker("a", "m2");
+        assertEquals("m2", snapshot.getMarker("a"));
+        assertNull(snapshot.get("SELECT x FROM t WHERE s = ? AND u = ?", "a", "b"));
+        assertNotNull(snapshot.get("SELECT x FROM t WHERE s = ? AND u = ?", "b", "a"));
+    }
+
+    @Test
+    public void unreadable() throws IOException {
+        File file = File.createTempFile("catalog-", ".ser");
+        file.deleteOnExit();
+        try (FileOutputStream ostr = new FileOutputStream(file)) {
+            ostr.write("not a snapshot".getBytes("UTF-8"));
+        }
+        assertNull(CatalogSnapshot.read(file));
+    }
+}
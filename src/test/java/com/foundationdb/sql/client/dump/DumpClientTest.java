@@ -15,16 +15,12 @@
 
 package com.foundationdb.sql.client.dump;
 
-import com.foundationdb.sql.client.ClientTestBase;
-
 /* (Not separate from server yet.)
 import com.foundationdb.junit.NamedParameterizedRunner;
 import com.foundationdb.junit.NamedParameterizedRunner.TestParameters;
 import com.foundationdb.junit.Parameterization;
 */
 import com.foundationdb.sql.client.StatementHelper;
-import org.junit.After;
-import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized.Parameters;
@@ -36,7 +32,7 @@ import java.sql.*;
 import java.util.*;
 
 @RunWith(Parameterized.class)
-public class DumpClientTest extends ClientTestBase
+public class DumpClientTest extends DumpTestBase
 {
     public static final File RESOURCE_DIR =
         new File("src/test/resources/"
@@ -61,33 +57,70 @@ public class DumpClientTest extends ClientTestBase
         this.loadFile = loadFile;
     }
 
-    @Before
-    @After
-    public void cleanUp() throws Exception {
-        dropSchema();
+    @Test
+    public void testLoadDump() throws Exception {
+        testLoadDump(1);
     }
 
     @Test
-    public void testLoadDump() throws Exception {
-        // Take file from previous run, load it and dump again and
-        // ensure it's the same.
-        String loaded = fileContents(loadFile);
+    public void testLoadDumpThreads() throws Exception {
+        testLoadDump(3);
+    }
 
-        Connection conn = openConnection();
-        StatementHelper helper = new StatementHelper(conn);
-        for (String sql : loaded.split("\\;\\s*")) {
-            helper.execute(sql, true);
+    @Test
+    public void testLoadDumpCatalogCache() throws Exception {
+        File cacheFile = File.createTempFile("catalog-", ".ser");
+        cacheFile.deleteOnExit();
+        cacheFile.delete();
+        // Once to fill the cache and once to use it.
+        testLoadDump(1, cacheFile);
+        assertTrue(cacheFile.exists());
+        testLoadDump(1, cacheFile);
+    }
+
+    @Test
+    public void testLoadDumpConsistent() throws Exception {
+        File reportFile = File.createTempFile("reads-", ".txt");
+        reportFile.deleteOnExit();
+        testLoadDump(3, null, reportFile);
+        String[] lines = fileContents(reportFile).split("\n");
+        assertEquals(ReadReport.HEADER, lines[0]);
+        int ngroups = 0;
+        for (String line : fileContents(loadFile).split("\n")) {
+            if (line.matches("--- \\S.*"))
+                ngroups++;
         }
-        helper.close();
-        conn.close();
+        assertEquals("one line per group", ngroups + 1, lines.length);
+        for (int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].split("\t", -1);
+            assertEquals(lines[i], 6, fields.length);
+            assertEquals(lines[i], "0", fields[1]);
+            assertFalse(lines[i], fields[4].isEmpty());
+            assertFalse(lines[i], fields[5].isEmpty());
+        }
+    }
+
+    protected void testLoadDump(int nthreads) throws Exception {
+        testLoadDump(nthreads, null);
+    }
+
+    protected void testLoadDump(int nthreads, File catalogCache) throws Exception {
+        testLoadDump(nthreads, catalogCache, null);
+    }
+
+    protected void testLoadDump(int nthreads, File catalogCache, File readReport) throws Exception {
+        // Take file from previous run, load it and dump again and
+        // ensure it's the same.
+        String loaded = loadCase();
 
         File dumpFile = File.createTempFile("dump-", ".sql");
         dumpFile.deleteOnExit();
 
-        DumpClientOptions options = new DumpClientOptions();
-        fillBaseOptions(options);
-        options.outputFile = dumpFile;
-        options.schemas.add(SCHEMA_NAME);
+        DumpClientOptions options = dumpOptions(dumpFile);
+        options.nthreads = nthreads;
+        options.catalogCache = catalogCache;
+        options.consistent = (readReport != null);
+        options.readReport = readReport;
 
         DumpClient client = new DumpClient(options);
         client.dump();
@@ -97,4 +130,96 @@ public class DumpClientTest extends ClientTestBase
         assertEquals(caseName, loaded, dumped);
     }
 
+    @Test
+    public void testLoadDumpDirectory() throws Exception {
+        String loaded = loadCase();
+        File dir = createTempDirectory();
+        try {
+            DumpClientOptions options = dumpOptions(dir);
+            options.directory = true;
+            new DumpClient(options).dump();
+            assertTrue(DumpManifest.isDumpDirectory(dir));
+            dropSchema();
+            loadDirectory(dir, null);
+            assertEquals(caseName, loaded, dumpText());
+        }
+        finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testLoadDumpDirectoryGroups() throws Exception {
+        String loaded = loadCase();
+        File dir = createTempDirectory();
+        try {
+            DumpClientOptions options = dumpOptions(dir);
+            options.directory = true;
+            new DumpClient(options).dump();
+            DumpManifest manifest = DumpManifest.read(dir);
+            List<String> groups = new ArrayList<>();
+            for (DumpManifest.Entry entry : manifest.getEntries()) {
+                if (!DumpManifest.NO_GROUP.equals(entry.getGroup()) && !groups.contains(entry.getGroup())) {
+                    groups.add(entry.getGroup());
+                }
+            }
+            dropSchema();
+            // What belongs to the whole dump is not loaded with --group.
+            for (DumpManifest.Entry entry : manifest.getEntries(DumpManifest.Kind.DDL)) {
+                if (DumpManifest.NO_GROUP.equals(entry.getGroup())) {
+                    loadFile(new File(dir, entry.getFileName()));
+                }
+            }
+            for (int i = 0; i < groups.size(); i++) {
+                loadDirectory(dir, Collections.singletonList(groups.get(i)));
+                if (i + 1 < groups.size()) {
+                    String last = groups.get(groups.size() - 1);
+                    assertFalse(caseName + " " + last, tableExists(last.substring(last.indexOf('.') + 1)));
+                }
+            }
+            for (DumpManifest.Entry entry : manifest.getEntries(DumpManifest.Kind.AFTER)) {
+                if (DumpManifest.NO_GROUP.equals(entry.getGroup())) {
+                    loadFile(new File(dir, entry.getFileName()));
+                }
+            }
+            assertEquals(caseName, loaded, dumpText());
+        }
+        finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testLoadDumpCsv() throws Exception {
+        String loaded = loadCase();
+        File dir = createTempDirectory();
+        try {
+            DumpClientOptions options = dumpOptions(dir);
+            options.directory = true;
+            options.dataFormat = DumpClientOptions.DataFormat.CSV;
+            options.csvPartRows = 2;
+            new DumpClient(options).dump();
+            dropSchema();
+            loadDirectory(dir, null);
+            assertEquals(caseName, loaded, dumpText());
+        }
+        finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    /** Load the case's file, which is also what dumping it should give. */
+    protected String loadCase() throws Exception {
+        String loaded = fileContents(loadFile);
+
+        Connection conn = openConnection();
+        StatementHelper helper = new StatementHelper(conn);
+        for (String sql : loaded.split("\\;\\s*")) {
+            helper.execute(sql, true);
+        }
+        helper.close();
+        conn.close();
+        return loaded;
+    }
+
 }
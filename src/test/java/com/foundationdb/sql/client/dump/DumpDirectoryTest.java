@@ -0,0 +1,299 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+package com.foundationdb.sql.client.dump;
+
+import com.foundationdb.sql.client.load.LoadClientOptions;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Dumps, mostly in directory format, of tables made for the purpose. */
+public class DumpDirectoryTest extends DumpTestBase
+{
+    @Test
+    public void testCsvNullsAndParts() throws Exception {
+        execute("CREATE TABLE t(id INT NOT NULL PRIMARY KEY, s VARCHAR(16), n INT)",
+                "INSERT INTO t VALUES(1, NULL, NULL), (2, '', 0), (3, 'a,\"b\"', 3), (4, 'x\ny', 4), (5, 'z', NULL)");
+        List<String> expected = queryRows("SELECT * FROM t ORDER BY id");
+        File dir = createTempDirectory();
+        try {
+            DumpClientOptions options = dumpOptions(dir);
+            options.directory = true;
+            options.dataFormat = DumpClientOptions.DataFormat.CSV;
+            options.csvPartRows = 2;
+            new DumpClient(options).dump();
+            assertEquals(3, DumpManifest.read(dir).getEntries(DumpManifest.Kind.CSV).size());
+            dropSchema();
+            // --columns is for a single file, not every table of a dump.
+            LoadClientOptions loadOptions = loadOptions();
+            loadOptions.columns = Arrays.asList("id");
+            load(loadOptions, dir);
+            assertEquals(expected, queryRows("SELECT * FROM t ORDER BY id"));
+        }
+        finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testDeferIndexes() throws Exception {
+        execute("CREATE TABLE t(id INT NOT NULL PRIMARY KEY, s VARCHAR(16))",
+                "CREATE INDEX t_s ON t(s)",
+                "CREATE TABLE u(id INT NOT NULL PRIMARY KEY, n INT)",
+                "CREATE UNIQUE INDEX u_n ON u(n)",
+                "INSERT INTO t VALUES(1, 'a'), (2, 'b'), (3, NULL)",
+                "INSERT INTO u VALUES(1, 10), (2, 20)");
+        List<String> expectedT = queryRows("SELECT * FROM t ORDER BY id");
+        List<String> expectedU = queryRows("SELECT * FROM u ORDER BY id");
+        String indexesQuery = "SELECT table_name, index_name FROM information_schema.indexes " +
+            "WHERE table_schema = '" + SCHEMA_NAME + "' AND index_type <> 'PRIMARY' ORDER BY table_name";
+        List<String> expectedIndexes = queryRows(indexesQuery);
+        assertEquals(2, expectedIndexes.size());
+        File dir = createTempDirectory();
+        try {
+            DumpClientOptions options = dumpOptions(dir);
+            options.directory = true;
+            new DumpClient(options).dump();
+            dropSchema();
+            LoadClientOptions loadOptions = loadOptions();
+            loadOptions.deferIndexes = true;
+            loadOptions.nthreads = 2;
+            load(loadOptions, dir);
+            assertEquals(expectedIndexes, queryRows(indexesQuery));
+            assertEquals(expectedT, queryRows("SELECT * FROM t ORDER BY id"));
+            assertEquals(expectedU, queryRows("SELECT * FROM u ORDER BY id"));
+        }
+        finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testGroupRanges() throws Exception {
+        execute("CREATE TABLE c(cid INT NOT NULL PRIMARY KEY, name VARCHAR(16))",
+                "CREATE TABLE o(oid INT NOT NULL PRIMARY KEY, cid INT, GROUPING FOREIGN KEY(cid) REFERENCES c(cid))",
+                "CREATE TABLE i(iid INT NOT NULL PRIMARY KEY, oid INT, GROUPING FOREIGN KEY(oid) REFERENCES o(oid))");
+        // Enough customers for two ranges, which meet at half.
+        int half = (int)DumpClient.MIN_RANGE_ROWS;
+        List<String> customers = new ArrayList<>(), orders = new ArrayList<>(), items = new ArrayList<>();
+        for (int cid = 1; cid <= 2 * half; cid++) {
+            customers.add(cid + ", 'c" + cid + "'");
+            if ((cid % 50 == 0) || (Math.abs(cid - half) <= 1)) {
+                for (int k = 1; k <= 2; k++) {
+                    int oid = cid * 10 + k;
+                    orders.add(oid + ", " + cid);
+                    items.add((oid * 10 + 1) + ", " + oid);
+                }
+            }
+        }
+        // Orphans: an order without its customer or with none, and items
+        // under those, without their order or with none.
+        orders.add("1, " + (3 * half));
+        orders.add("2, NULL");
+        items.add("1, 1");
+        items.add("2, 7");
+        items.add("3, NULL");
+        items.add("4, 2");
+        insertRows("c", customers);
+        insertRows("o", orders);
+        insertRows("i", items);
+        String[] queries = {
+            "SELECT * FROM c ORDER BY cid", "SELECT * FROM o ORDER BY oid", "SELECT * FROM i ORDER BY iid"
+        };
+        List<List<String>> expected = new ArrayList<>();
+        for (String query : queries) {
+            expected.add(queryRows(query));
+        }
+        File dir = createTempDirectory();
+        try {
+            DumpClientOptions options = dumpOptions(dir);
+            options.directory = true;
+            options.dataFormat = DumpClientOptions.DataFormat.CSV;
+            options.groupRanges = 2;
+            options.nthreads = 2;
+            new DumpClient(options).dump();
+            List<DumpManifest.Entry> csv = DumpManifest.read(dir).getEntries(DumpManifest.Kind.CSV);
+            assertEquals(6, csv.size());
+            assertTrue(csv.get(0).getFileName(), csv.get(0).getFileName().endsWith(".r0001.csv"));
+            assertTrue(csv.get(5).getFileName(), csv.get(5).getFileName().endsWith(".r0002.csv"));
+            dropSchema();
+            load(loadOptions(), dir);
+            for (int i = 0; i < queries.length; i++) {
+                assertEquals(queries[i], expected.get(i), queryRows(queries[i]));
+            }
+        }
+        finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testIncremental() throws Exception {
+        execute("CREATE TABLE a(id INT NOT NULL PRIMARY KEY, s VARCHAR(16))",
+                "CREATE TABLE b(id INT NOT NULL PRIMARY KEY, s VARCHAR(16))",
+                "CREATE TABLE c(id INT NOT NULL PRIMARY KEY, s VARCHAR(16))",
+                "INSERT INTO a VALUES(1, 'a1'), (2, 'a2')",
+                "INSERT INTO b VALUES(1, 'b1')",
+                "INSERT INTO c VALUES(1, 'c1')");
+        File dir = createTempDirectory();
+        try {
+            DumpClientOptions options = dumpOptions(dir);
+            options.directory = true;
+            options.incremental = true;
+            new DumpClient(options).dump();
+            DumpManifest first = DumpManifest.read(dir);
+            assertEquals(2, first.getMarker(SCHEMA_NAME + ".a").getRows());
+            File aData = dataFile(dir, first, "a"), bData = dataFile(dir, first, "b"), cData = dataFile(dir, first, "c");
+            // So that it shows if they are written again.
+            for (File file : new File[] { aData, bData, cData }) {
+                assertTrue(file.setLastModified(0));
+            }
+
+            execute("INSERT INTO b VALUES(2, 'b2')",
+                    "DROP TABLE c");
+            List<String> expectedA = queryRows("SELECT * FROM a ORDER BY id");
+            List<String> expectedB = queryRows("SELECT * FROM b ORDER BY id");
+            options = dumpOptions(dir);
+            options.directory = true;
+            options.incremental = true;
+            options.nthreads = 2;
+            new DumpClient(options).dump();
+            DumpManifest second = DumpManifest.read(dir);
+            assertEquals(first.getMarker(SCHEMA_NAME + ".a"), second.getMarker(SCHEMA_NAME + ".a"));
+            assertEquals(aData, dataFile(dir, second, "a"));
+            assertEquals("kept", 0, aData.lastModified());
+            assertEquals(2, second.getMarker(SCHEMA_NAME + ".b").getRows());
+            assertTrue("written again", dataFile(dir, second, "b").lastModified() > 0);
+            assertNull(second.getMarker(SCHEMA_NAME + ".c"));
+            assertFalse("deleted", cData.exists());
+
+            dropSchema();
+            load(loadOptions(), dir);
+            assertEquals(expectedA, queryRows("SELECT * FROM a ORDER BY id"));
+            assertEquals(expectedB, queryRows("SELECT * FROM b ORDER BY id"));
+        }
+        finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testIncrementalNoData() throws Exception {
+        execute("CREATE TABLE a(id INT NOT NULL PRIMARY KEY, s VARCHAR(16))",
+                "INSERT INTO a VALUES(1, 'a1')");
+        File dir = createTempDirectory();
+        try {
+            DumpClientOptions options = dumpOptions(dir);
+            options.directory = true;
+            options.incremental = true;
+            new DumpClient(options).dump();
+            File aData = dataFile(dir, DumpManifest.read(dir), "a");
+            options = dumpOptions(dir);
+            options.directory = true;
+            options.incremental = true;
+            options.noData = true;
+            try {
+                new DumpClient(options).dump();
+                fail("--incremental --no-data accepted");
+            }
+            catch (Exception ex) {
+                assertTrue(ex.getMessage(), ex.getMessage().contains("--no-data"));
+            }
+            assertTrue(aData.exists());
+            assertTrue(DumpManifest.isDumpDirectory(dir));
+        }
+        finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testCatalogCacheForeignKeyChange() throws Exception {
+        execute("CREATE TABLE p(id INT NOT NULL PRIMARY KEY)",
+                "CREATE TABLE ch(id INT NOT NULL PRIMARY KEY, pid INT, " +
+                "CONSTRAINT fk FOREIGN KEY(pid) REFERENCES p(id) ON DELETE CASCADE)");
+        File cacheFile = File.createTempFile("catalog-", ".ser");
+        cacheFile.deleteOnExit();
+        cacheFile.delete();
+        File dumpFile = File.createTempFile("dump-", ".sql");
+        dumpFile.deleteOnExit();
+        DumpClientOptions options = dumpOptions(dumpFile);
+        options.catalogCache = cacheFile;
+        new DumpClient(options).dump();
+        assertTrue(cacheFile.exists());
+        // Same name, different rule.
+        execute("ALTER TABLE ch DROP FOREIGN KEY fk",
+                "ALTER TABLE ch ADD CONSTRAINT fk FOREIGN KEY(pid) REFERENCES p(id) ON DELETE RESTRICT");
+        options = dumpOptions(dumpFile);
+        options.catalogCache = cacheFile;
+        new DumpClient(options).dump();
+        assertEquals(dumpText(), fileContents(dumpFile));
+    }
+
+    @Test
+    public void testCatalogCacheSchemaChange() throws Exception {
+        execute("CREATE TABLE p(id INT NOT NULL PRIMARY KEY)");
+        File cacheFile = File.createTempFile("catalog-", ".ser");
+        cacheFile.deleteOnExit();
+        cacheFile.delete();
+        File cachedFile = File.createTempFile("dump-", ".sql");
+        cachedFile.deleteOnExit();
+        DumpClientOptions options = dumpOptions(cachedFile);
+        options.catalogCache = cacheFile;
+        new DumpClient(options).dump();
+        String marker = CatalogSnapshot.read(cacheFile).getMarker(SCHEMA_NAME);
+        assertNotNull(marker);
+        execute("ALTER TABLE p ADD COLUMN name VARCHAR(16)",
+                "CREATE INDEX p_name ON p(name)");
+        options = dumpOptions(cachedFile);
+        options.catalogCache = cacheFile;
+        new DumpClient(options).dump();
+        assertFalse(marker.equals(CatalogSnapshot.read(cacheFile).getMarker(SCHEMA_NAME)));
+        File uncachedFile = File.createTempFile("dump-", ".sql");
+        uncachedFile.deleteOnExit();
+        new DumpClient(dumpOptions(uncachedFile)).dump();
+        assertEquals(fileContents(uncachedFile), fileContents(cachedFile));
+    }
+
+    /** The one data file of the group with the given root. */
+    protected static File dataFile(File dir, DumpManifest manifest, String root) {
+        File result = null;
+        for (DumpManifest.Entry entry : manifest.getEntries(DumpManifest.Kind.DATA)) {
+            if ((SCHEMA_NAME + "." + root).equals(entry.getGroup())) {
+                assertNull(root, result);
+                result = new File(dir, entry.getFileName());
+            }
+        }
+        assertNotNull(root, result);
+        return result;
+    }
+
+    protected void insertRows(String table, List<String> rows) throws Exception {
+        List<String> inserts = new ArrayList<>();
+        for (int from = 0; from < rows.size(); from += 1000) {
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" VALUES");
+            for (int i = from; i < Math.min(from + 1000, rows.size()); i++) {
+                if (i > from) sql.append(',');
+                sql.append(" (").append(rows.get(i)).append(')');
+            }
+            inserts.add(sql.toString());
+        }
+        execute(inserts.toArray(new String[inserts.size()]));
+    }
+}
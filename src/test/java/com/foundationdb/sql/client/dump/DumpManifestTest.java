@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+package com.foundationdb.sql.client.dump;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class DumpManifestTest {
+
+    @Test
+    public void roundTrip() throws IOException {
+        File dir = File.createTempFile("dump-", "");
+        dir.delete();
+        dir.mkdir();
+        try {
+            assertFalse(DumpManifest.isDumpDirectory(dir));
+            DumpManifest manifest = new DumpManifest();
+            manifest.add(DumpManifest.Kind.DDL, DumpManifest.NO_GROUP, "schema.sql");
+            manifest.add(DumpManifest.Kind.DDL, "test.customers", "0001-test.customers.sql");
+            manifest.add(DumpManifest.Kind.DATA, "test.customers", "0001-test.customers.data.sql");
+            manifest.add(new DumpManifest.Entry(DumpManifest.Kind.CSV, "test.customers", "0001-test.customers.test.orders.csv",
+                                                "test", "orders"));
+            manifest.add(DumpManifest.Kind.AFTER, DumpManifest.NO_GROUP, "foreign-keys.sql");
+            manifest.setMarker("test.customers", new DumpManifest.GroupMarker(12, "0123abcd"));
+            manifest.write(dir);
+            assertTrue(DumpManifest.isDumpDirectory(dir));
+
+            DumpManifest read = DumpManifest.read(dir);
+            assertEquals(5, read.getEntries().size());
+            List<DumpManifest.Entry> ddl = read.getEntries(DumpManifest.Kind.DDL);
+            assertEquals(2, ddl.size());
+            assertEquals(DumpManifest.NO_GROUP, ddl.get(0).getGroup());
+            assertEquals("schema.sql", ddl.get(0).getFileName());
+            assertEquals("test.customers", ddl.get(1).getGroup());
+            List<DumpManifest.Entry> data = read.getEntries(DumpManifest.Kind.DATA);
+            assertEquals(1, data.size());
+            assertEquals("0001-test.customers.data.sql", data.get(0).getFileName());
+            assertNull(data.get(0).getTable());
+            DumpManifest.Entry csv = read.getEntries(DumpManifest.Kind.CSV).get(0);
+            assertEquals("test.customers", csv.getGroup());
+            assertEquals("0001-test.customers.test.orders.csv", csv.getFileName());
+            assertEquals("test", csv.getSchema());
+            assertEquals("orders", csv.getTable());
+            assertEquals("foreign-keys.sql", read.getEntries(DumpManifest.Kind.AFTER).get(0).getFileName());
+            DumpManifest.GroupMarker marker = read.getMarker("test.customers");
+            assertEquals(12, marker.getRows());
+            assertEquals("0123abcd", marker.getChecksum());
+            assertEquals(new DumpManifest.GroupMarker(12, "0123abcd"), marker);
+            assertFalse(marker.equals(new DumpManifest.GroupMarker(12, "0123abce")));
+            assertNull(read.getMarker("test.orders"));
+        }
+        finally {
+            new File(dir, DumpManifest.FILE_NAME).delete();
+            dir.delete();
+        }
+    }
+}
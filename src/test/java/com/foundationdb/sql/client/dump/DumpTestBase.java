@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+package com.foundationdb.sql.client.dump;
+
+import com.foundationdb.sql.client.ClientTestBase;
+import com.foundationdb.sql.client.StatementHelper;
+import com.foundationdb.sql.client.load.Format;
+import com.foundationdb.sql.client.load.LoadClient;
+import com.foundationdb.sql.client.load.LoadClientOptions;
+import org.junit.After;
+import org.junit.Before;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+
+/** Dumping and loading the test schema again. */
+public abstract class DumpTestBase extends ClientTestBase
+{
+    @Before
+    @After
+    public void cleanUp() throws Exception {
+        dropSchema();
+    }
+
+    protected DumpClientOptions dumpOptions(File outputFile) {
+        DumpClientOptions options = new DumpClientOptions();
+        fillBaseOptions(options);
+        options.outputFile = outputFile;
+        options.schemas.add(SCHEMA_NAME);
+        return options;
+    }
+
+    /** A plain dump of the schema as it is now. */
+    protected String dumpText() throws Exception {
+        File dumpFile = File.createTempFile("dump-", ".sql");
+        dumpFile.deleteOnExit();
+        new DumpClient(dumpOptions(dumpFile)).dump();
+        return fileContents(dumpFile);
+    }
+
+    protected LoadClientOptions loadOptions() {
+        LoadClientOptions options = new LoadClientOptions();
+        fillBaseOptions(options);
+        options.schema = SCHEMA_NAME;
+        options.quiet = true;
+        return options;
+    }
+
+    protected void loadDirectory(File dir, List<String> groups) throws Exception {
+        LoadClientOptions options = loadOptions();
+        options.groups = groups;
+        load(options, dir);
+    }
+
+    protected void loadFile(File file) throws Exception {
+        LoadClientOptions options = loadOptions();
+        options.format = Format.FDB_SQL;
+        load(options, file);
+    }
+
+    protected void load(LoadClientOptions options, File file) throws Exception {
+        LoadClient client = new LoadClient(options);
+        try {
+            assertTrue(file.toString(), client.load(file) >= 0);
+        }
+        finally {
+            client.clearConnections();
+        }
+    }
+
+    protected void execute(String... sqls) throws Exception {
+        Connection conn = openConnection();
+        StatementHelper helper = new StatementHelper(conn);
+        try {
+            for (String sql : sqls) {
+                helper.execute(sql, true);
+            }
+        }
+        finally {
+            helper.close();
+            conn.close();
+        }
+    }
+
+    /** The rows of a query, each with its values separated by tabs. */
+    protected List<String> queryRows(String query) throws Exception {
+        Connection conn = openConnection();
+        Statement stmt = conn.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(query);
+            int ncols = rs.getMetaData().getColumnCount();
+            List<String> rows = new ArrayList<>();
+            while (rs.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 1; i <= ncols; i++) {
+                    if (i > 1) row.append('\t');
+                    row.append(rs.getString(i));
+                }
+                rows.add(row.toString());
+            }
+            rs.close();
+            return rows;
+        }
+        finally {
+            stmt.close();
+            conn.close();
+        }
+    }
+
+    protected boolean tableExists(String table) throws Exception {
+        Connection conn = openConnection();
+        StatementHelper helper = new StatementHelper(conn);
+        try {
+            ResultSet rs = helper.executeQueryPrepared("SELECT 1 FROM information_schema.tables WHERE table_schema = ? AND table_name = ?",
+                                                       SCHEMA_NAME, table);
+            boolean exists = rs.next();
+            rs.close();
+            return exists;
+        }
+        finally {
+            helper.close();
+            conn.close();
+        }
+    }
+
+    protected static File createTempDirectory() throws IOException {
+        File dir = File.createTempFile("dump-", "");
+        dir.delete();
+        dir.mkdir();
+        return dir;
+    }
+
+    protected static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
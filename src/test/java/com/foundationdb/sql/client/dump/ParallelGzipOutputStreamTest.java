@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+package com.foundationdb.sql.client.dump;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class ParallelGzipOutputStreamTest {
+
+    @Test
+    public void empty() throws IOException {
+        assertArrayEquals(new byte[0], roundTrip(new byte[0], 2, 16));
+    }
+
+    @Test
+    public void manyBlocks() throws IOException {
+        StringBuilder str = new StringBuilder();
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            str.append("INSERT INTO t VALUES(").append(random.nextInt()).append(", 'row ").append(i).append("');\n");
+        }
+        byte[] bytes = str.toString().getBytes("UTF-8");
+        assertArrayEquals(bytes, roundTrip(bytes, 3, 1000));
+        assertArrayEquals(bytes, roundTrip(bytes, 1, 4096));
+    }
+
+    private static byte[] roundTrip(byte[] bytes, int nthreads, int blockSize) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(compressed, nthreads, blockSize);
+        // Odd sized writes, so that they straddle blocks.
+        int i = 0;
+        while (i < bytes.length) {
+            if (i % 7 == 0) {
+                gzip.write(bytes[i++]);
+            }
+            else {
+                int n = Math.min(bytes.length - i, 333);
+                gzip.write(bytes, i, n);
+                i += n;
+                gzip.flush();
+            }
+        }
+        gzip.close();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (GZIPInputStream istr = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = istr.read(buffer)) > 0) {
+                result.write(buffer, 0, n);
+            }
+        }
+        return result.toByteArray();
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+package com.foundationdb.sql.client.dump;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.foundationdb.sql.client.ClientTestBase.fileContents;
+
+public class ReadReportTest {
+
+    @Test
+    public void sortedByGroupAndRange() throws IOException {
+        ReadReport report = new ReadReport();
+        report.add("test.orders", 2, 100, null, "2014-01-01 00:00:02", "2014-01-01 00:00:03");
+        report.add("test.customers", 0, null, null, "2014-01-01 00:00:00", "2014-01-01 00:00:01");
+        report.add("test.orders", 1, null, 100, "2014-01-01 00:00:01", "2014-01-01 00:00:02");
+        File file = File.createTempFile("reads-", ".txt");
+        try {
+            report.write(file);
+            assertEquals(ReadReport.HEADER + "\n" +
+                         "test.customers\t0\t\t\t2014-01-01 00:00:00\t2014-01-01 00:00:01\n" +
+                         "test.orders\t1\t\t100\t2014-01-01 00:00:01\t2014-01-01 00:00:02\n" +
+                         "test.orders\t2\t100\t\t2014-01-01 00:00:02\t2014-01-01 00:00:03\n",
+                         fileContents(file));
+        }
+        finally {
+            file.delete();
+        }
+    }
+}
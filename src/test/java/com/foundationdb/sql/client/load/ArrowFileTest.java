@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.foundationdb.sql.client.load.ArrowFile.*;
+import static com.foundationdb.sql.client.load.LineReaderCsvBufferTest.tmpFileFrom;
+
+public class ArrowFileTest
+{
+    private static ArrowWriter allTypes() {
+        return new ArrowWriter()
+            .column("id", INT, 32, (byte)1)
+            .column("big", INT, 64, (byte)1)
+            .column("small", INT, 8, (byte)0)
+            .column("huge", INT, 64, (byte)0)
+            .column("name", UTF8)
+            .column("flag", BOOL)
+            .column("price", DECIMAL, 10, 2)
+            .column("score", FLOATING_POINT, (short)DOUBLE)
+            .column("ratio", FLOATING_POINT, (short)SINGLE)
+            .column("day", DATE, (short)DAY)
+            .column("at", TIMESTAMP, (short)MICROSECOND)
+            .column("at_zone", TIMESTAMP, (short)MILLISECOND, "+02:00")
+            .column("t", TIME, (short)MILLISECOND, 32)
+            .column("data", BINARY)
+            .column("text", LARGE_UTF8)
+            .column("nothing", NULL)
+            .batch(new Object[] { 1, 5000000000L, 200, -1L, "one", true, new BigDecimal("-1234.56"),
+                                  2.5, 0.25f, 11016, -1L, 0L, 45296789, new byte[] { 1, 2 }, "ü", null },
+                   new Object[] { null, null, null, null, null, null, null,
+                                  null, null, null, null, null, null, null, null, null })
+            .batch(new Object[] { 3, -7L, 0, 7L, "", false, new BigDecimal("0.01"),
+                                  -1.0, 1f, -1, 1500000L, 1000L, 0, new byte[0], "three", null });
+    }
+
+    @Test
+    public void readsTypes() throws Exception {
+        checkAllTypes(allTypes().write());
+    }
+
+    @Test
+    public void readsLegacyMessages() throws Exception {
+        checkAllTypes(allTypes().legacy().write());
+    }
+
+    private void checkAllTypes(File file) throws Exception {
+        try (FileInputStream istr = new FileInputStream(file)) {
+            ArrowFile arrow = new ArrowFile(istr.getChannel());
+            assertEquals(Arrays.asList("id", "big", "small", "huge", "name", "flag", "price", "score", "ratio",
+                                       "day", "at", "at_zone", "t", "data", "text", "nothing"),
+                         arrow.getColumnNames());
+            assertEquals(Arrays.asList(), arrow.getUnsupported());
+            assertEquals(2, arrow.getBatchCount());
+            assertEquals(2, arrow.getBatchLength(0));
+            assertEquals(1, arrow.getBatchLength(1));
+            ArrowFile.Batch batch = arrow.readBatch(0);
+            assertEquals(2, batch.getLength());
+            assertEquals(Arrays.asList(1, 5000000000L, 200, new BigDecimal("18446744073709551615"),
+                                       "one", true, new BigDecimal("-1234.56"), 2.5, 0.25f,
+                                       "2000-02-29", "1969-12-31 23:59:59.999999", "1970-01-01 02:00:00",
+                                       "12:34:56.789"),
+                         row(batch, 0).subList(0, 13));
+            assertArrayEquals(new byte[] { 1, 2 }, (byte[])batch.get(13, 0));
+            assertEquals("ü", batch.get(14, 0));
+            assertNull(batch.get(15, 0));
+            for (Object value : row(batch, 1)) {
+                assertNull(value);
+            }
+            batch = arrow.readBatch(1);
+            assertEquals(Arrays.asList(3, -7L, 0, 7L, "", false, new BigDecimal("0.01"), -1.0, 1f,
+                                       "1969-12-31", "1970-01-01 00:00:01.5", "1970-01-01 02:00:01",
+                                       "00:00:00"),
+                         row(batch, 0).subList(0, 13));
+            assertArrayEquals(new byte[0], (byte[])batch.get(13, 0));
+            assertEquals("three", batch.get(14, 0));
+        }
+    }
+
+    private static List<Object> row(ArrowFile.Batch batch, int row) {
+        Object[] values = new Object[16];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = batch.get(i, row);
+        }
+        return Arrays.asList(values);
+    }
+
+    @Test
+    public void unsupportedTypes() throws Exception {
+        File file = new ArrowWriter()
+            .column("id", INT, 32, (byte)1)
+            .column("items", 12)
+            .column("half", FLOATING_POINT, (short)HALF)
+            .write();
+        try (FileInputStream istr = new FileInputStream(file)) {
+            ArrowFile arrow = new ArrowFile(istr.getChannel());
+            assertEquals(Arrays.asList("items has type List", "half has half precision floats"),
+                         arrow.getUnsupported());
+        }
+    }
+
+    @Test(expected = LineReader.ParseException.class)
+    public void compressedBatch() throws Exception {
+        File file = new ArrowWriter()
+            .column("id", INT, 32, (byte)1)
+            .batch(new Object[] { 1 })
+            .compressed()
+            .write();
+        try (FileInputStream istr = new FileInputStream(file)) {
+            new ArrowFile(istr.getChannel()).readBatch(0);
+        }
+    }
+
+    @Test(expected = LineReader.ParseException.class)
+    public void notArrow() throws Exception {
+        File file = tmpFileFrom(true, "1,one", "2,two", "3,three", "4,four", "5,five");
+        try (FileInputStream istr = new FileInputStream(file)) {
+            new ArrowFile(istr.getChannel());
+        }
+    }
+
+    @Test
+    public void splitsByBatch() throws Exception {
+        ArrowWriter writer = new ArrowWriter()
+            .column("id", INT, 64, (byte)1)
+            .column("name", UTF8);
+        int id = 0;
+        for (int size : new int[] { 10, 1, 1, 10, 5, 5 }) {
+            Object[][] rows = new Object[size][];
+            for (int i = 0; i < size; i++, id++) {
+                rows[i] = new Object[] { id, "row " + id };
+            }
+            writer.batch(rows);
+        }
+        File file = writer.write();
+        LoadClient client = new LoadClient(new LoadClientOptions());
+        try (FileInputStream istr = new FileInputStream(file)) {
+            ArrowLoader loader = new ArrowLoader(client, istr.getChannel(), "t");
+            loader.checkFormat();
+            SegmentLoader whole = loader.wholeFile();
+            assertEquals(Arrays.asList(0L, 6L, 0L), Arrays.asList(whole.start, whole.end, whole.startLineNo));
+            List<? extends SegmentLoader> segments = loader.split(3);
+            assertEquals(3, segments.size());
+            long rows = 0, next = 0;
+            int[] sizes = { 10, 1, 1, 10, 5, 5 };
+            for (SegmentLoader segment : segments) {
+                assertEquals(next, segment.start);
+                assertEquals(rows, segment.startLineNo);
+                for (long i = segment.start; i < segment.end; i++) {
+                    rows += sizes[(int)i];
+                }
+                next = segment.end;
+            }
+            assertEquals(6, next);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void columnNotInFile() throws Exception {
+        File file = new ArrowWriter()
+            .column("id", INT, 32, (byte)1)
+            .batch(new Object[] { 1 })
+            .write();
+        LoadClientOptions options = new LoadClientOptions();
+        options.columns = Arrays.asList("id", "name");
+        LoadClient client = new LoadClient(options);
+        try (FileInputStream istr = new FileInputStream(file)) {
+            new ArrowLoader(client, istr.getChannel(), "t").checkFormat();
+        }
+    }
+
+    @Test
+    public void dates() {
+        assertEquals("1970-01-01", formatDate(new StringBuilder(), 0).toString());
+        assertEquals("1969-12-31", formatDate(new StringBuilder(), -1).toString());
+        assertEquals("1900-03-01", formatDate(new StringBuilder(), -25508).toString());
+        assertEquals("2038-01-19", formatDate(new StringBuilder(), 24855).toString());
+        assertEquals("23:59:59.000001", formatTime(new StringBuilder(), 86399000001L, MICROSECOND).toString());
+    }
+}
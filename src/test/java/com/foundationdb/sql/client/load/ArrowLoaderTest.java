@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.foundationdb.sql.client.load.ArrowFile.*;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class ArrowLoaderTest extends LoaderTestBase
+{
+    @Before
+    public void setupOptions() {
+        super.setupOptions();
+        options.format = Format.AUTO;
+        options.target = "things";
+    }
+
+    private long load(File file) throws Exception {
+        LoadClient client = new LoadClient(options);
+        try {
+            return client.load(file);
+        }
+        finally {
+            client.clearConnections();
+        }
+    }
+
+    @Test
+    public void testTypes() throws Exception {
+        loadDDL("CREATE TABLE things(id INT PRIMARY KEY, big BIGINT, name VARCHAR(32), price DECIMAL(10,2), " +
+                "score DOUBLE, day DATE, at DATETIME, flag BOOLEAN)");
+        File file = new ArrowWriter()
+            .column("id", INT, 32, (byte)1)
+            .column("big", INT, 64, (byte)1)
+            .column("name", UTF8)
+            .column("price", DECIMAL, 10, 2)
+            .column("score", FLOATING_POINT, (short)DOUBLE)
+            .column("day", DATE, (short)DAY)
+            .column("at", TIMESTAMP, (short)MILLISECOND)
+            .column("flag", BOOL)
+            .batch(new Object[] { 1, 5000000000L, "one", new BigDecimal("12.34"), 0.5, 16071, 1388579696000L, true },
+                   new Object[] { 2, null, null, null, null, null, null, null })
+            .write();
+        assertEquals(2, load(file));
+        assertEquals("Error output stream", "", errorStream.toString());
+        checkQuery("SELECT * FROM things ORDER BY id",
+                   Arrays.asList(listO(1, 5000000000L, "one", new BigDecimal("12.34"), 0.5,
+                                       date(2014, 1, 1), timestamp(2014, 1, 1, 12, 34, 56), true),
+                                 listO(2, null, null, null, null, null, null, null)));
+    }
+
+    @Test
+    public void testThreadedBatches() throws Exception {
+        loadDDL("CREATE TABLE things(id BIGINT PRIMARY KEY, name VARCHAR(32))");
+        options.nthreads = 3;
+        options.batchSize = 7;
+        ArrowWriter writer = new ArrowWriter()
+            .column("id", INT, 64, (byte)1)
+            .column("name", UTF8);
+        List<List<Object>> expected = new ArrayList<>();
+        long id = 0;
+        for (int batch = 0; batch < 5; batch++) {
+            Object[][] rows = new Object[20][];
+            for (int i = 0; i < rows.length; i++, id++) {
+                rows[i] = new Object[] { id, "row " + id };
+                expected.add(listO(id, "row " + id));
+            }
+            writer.batch(rows);
+        }
+        assertEquals(100, load(writer.write()));
+        checkQuery("SELECT * FROM things ORDER BY id", expected);
+    }
+
+    @Test
+    public void testColumns() throws Exception {
+        loadDDL("CREATE TABLE things(id INT PRIMARY KEY, name VARCHAR(32))");
+        options.columns = Arrays.asList("name", "id");
+        File file = new ArrowWriter()
+            .column("id", INT, 32, (byte)1)
+            .column("extra", UTF8)
+            .column("name", UTF8)
+            .batch(new Object[] { 1, "x", "one" }, new Object[] { 2, "y", "two" })
+            .write();
+        assertEquals(2, load(file));
+        checkQuery("SELECT * FROM things ORDER BY id",
+                   Arrays.asList(listO(1, "one"), listO(2, "two")));
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+        loadDDL("CREATE TABLE things(id INT PRIMARY KEY)");
+        File file = new ArrowWriter()
+            .column("id", INT, 32, (byte)1)
+            .column("items", 12)
+            .write();
+        assertEquals(-1, load(file));
+        assertThat(errorStream.toString(), containsString("items has type List"));
+    }
+}
@@ -0,0 +1,405 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.foundationdb.sql.client.load.ArrowFile.*;
+
+/**
+ * Writes small Arrow IPC files for tests, laid out as the Arrow
+ * libraries do. FlatBuffers tables are given as an <code>Object[]</code>
+ * of their fields by id: <code>Byte</code>, <code>Short</code>,
+ * <code>Integer</code> and <code>Long</code> scalars, <code>String</code>s,
+ * nested tables, <code>List</code>s of tables and {@link Structs}.
+ */
+class ArrowWriter
+{
+    private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
+    private static final short V5 = 4;
+    private static final byte SCHEMA = 1;
+
+    private final List<Object[]> fields = new ArrayList<>();
+    private final List<Integer> types = new ArrayList<>();
+    private final List<Object[]> typeParams = new ArrayList<>();
+    private final List<Object[][]> batches = new ArrayList<>();
+    private boolean legacy, compressed;
+
+    /** Add a column of the given type, with the fields of its type table. */
+    public ArrowWriter column(String name, int type, Object... params) {
+        fields.add(new Object[] { name, (byte)1, (byte)type, params, null, Collections.emptyList() });
+        types.add(type);
+        typeParams.add(params);
+        return this;
+    }
+
+    /** Add a record batch of these rows. */
+    public ArrowWriter batch(Object[]... rows) {
+        batches.add(rows);
+        return this;
+    }
+
+    /** Write messages as before format 0.15, without the continuation marker. */
+    public ArrowWriter legacy() {
+        legacy = true;
+        return this;
+    }
+
+    /** Mark the record batches as compressed, which they are not. */
+    public ArrowWriter compressed() {
+        compressed = true;
+        return this;
+    }
+
+    public File write() throws IOException {
+        File file = File.createTempFile("load", ".arrow");
+        file.deleteOnExit();
+        write(file);
+        return file;
+    }
+
+    public void write(File file) throws IOException {
+        Output out = new Output();
+        out.put(MAGIC).put(new byte[2]);
+        Object[] schema = { (short)0, fields };
+        writeMessage(out, new Object[] { V5, SCHEMA, schema, 0L }, new byte[0]);
+        ByteBuffer blocks = ByteBuffer.allocate(24 * batches.size()).order(ByteOrder.LITTLE_ENDIAN);
+        for (Object[][] rows : batches) {
+            Output body = new Output();
+            ByteBuffer nodes = ByteBuffer.allocate(16 * types.size()).order(ByteOrder.LITTLE_ENDIAN);
+            List<long[]> buffers = new ArrayList<>();
+            for (int i = 0; i < types.size(); i++) {
+                writeColumn(body, buffers, nodes, rows, i);
+            }
+            ByteBuffer bufferStructs = ByteBuffer.allocate(16 * buffers.size()).order(ByteOrder.LITTLE_ENDIAN);
+            for (long[] buffer : buffers) {
+                bufferStructs.putLong(buffer[0]).putLong(buffer[1]);
+            }
+            Object[] recordBatch = {
+                (long)rows.length,
+                new Structs(types.size(), nodes.array()),
+                new Structs(buffers.size(), bufferStructs.array()),
+                compressed ? new Object[] { (byte)0 } : null
+            };
+            long offset = out.size();
+            int metaDataLength = writeMessage(out, new Object[] { V5, (byte)RECORD_BATCH, recordBatch, (long)body.size() },
+                                              body.toByteArray());
+            blocks.putLong(offset).putInt(metaDataLength).putInt(0).putLong(body.size());
+        }
+        byte[] footer = new Builder().finish(new Object[] {
+                V5, schema, null, new Structs(batches.size(), blocks.array())
+            });
+        out.put(footer).putInt(footer.length).put(MAGIC);
+        try (FileOutputStream ostr = new FileOutputStream(file)) {
+            ostr.write(out.toByteArray());
+        }
+    }
+
+    /** @return the length of the metadata, with its prefix and padding */
+    private int writeMessage(Output out, Object[] message, byte[] body) {
+        byte[] metadata = new Builder().finish(message);
+        int prefix = legacy ? 4 : 8;
+        metadata = Arrays.copyOf(metadata, (prefix + metadata.length + 7) / 8 * 8 - prefix);
+        if (!legacy) {
+            out.putInt(-1);
+        }
+        out.putInt(metadata.length).put(metadata).put(body);
+        return prefix + metadata.length;
+    }
+
+    private void writeColumn(Output body, List<long[]> buffers, ByteBuffer nodes, Object[][] rows, int column) {
+        int type = types.get(column);
+        Object[] params = typeParams.get(column);
+        int nulls = 0;
+        byte[] validity = new byte[(rows.length + 7) / 8];
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i][column] == null) {
+                nulls++;
+            }
+            else {
+                validity[i / 8] |= 1 << (i % 8);
+            }
+        }
+        nodes.putLong(rows.length).putLong(nulls);
+        if (type == NULL) {
+            return;
+        }
+        addBuffer(body, buffers, (nulls == 0) ? new byte[0] : validity);
+        if (type == BOOL) {
+            byte[] bits = new byte[(rows.length + 7) / 8];
+            for (int i = 0; i < rows.length; i++) {
+                if (Boolean.TRUE.equals(rows[i][column])) {
+                    bits[i / 8] |= 1 << (i % 8);
+                }
+            }
+            addBuffer(body, buffers, bits);
+        }
+        else if ((type == BINARY) || (type == UTF8) || (type == LARGE_BINARY) || (type == LARGE_UTF8)) {
+            boolean large = (type == LARGE_BINARY) || (type == LARGE_UTF8);
+            Output offsets = new Output();
+            Output values = new Output();
+            for (int i = 0; i <= rows.length; i++) {
+                if (large) {
+                    offsets.putLong(values.size());
+                }
+                else {
+                    offsets.putInt(values.size());
+                }
+                if (i < rows.length) {
+                    Object value = rows[i][column];
+                    if (value instanceof String) {
+                        values.put(((String)value).getBytes(UTF8_CHARSET));
+                    }
+                    else if (value != null) {
+                        values.put((byte[])value);
+                    }
+                }
+            }
+            addBuffer(body, buffers, offsets.toByteArray());
+            addBuffer(body, buffers, values.toByteArray());
+        }
+        else {
+            int width = width(type, params);
+            Output values = new Output();
+            for (Object[] row : rows) {
+                Object value = row[column];
+                ByteBuffer bb = ByteBuffer.allocate(width).order(ByteOrder.LITTLE_ENDIAN);
+                if (value instanceof byte[]) {
+                    bb.put((byte[])value);
+                }
+                else if (value instanceof BigDecimal) {
+                    byte[] bytes = ((BigDecimal)value).unscaledValue().toByteArray();
+                    byte fill = (bytes[0] < 0) ? (byte)-1 : 0;
+                    for (int i = 0; i < width; i++) {
+                        bb.put((i < bytes.length) ? bytes[bytes.length - 1 - i] : fill);
+                    }
+                }
+                else if (value instanceof Float) {
+                    bb.putFloat((Float)value);
+                }
+                else if (value instanceof Double) {
+                    bb.putDouble((Double)value);
+                }
+                else if (value != null) {
+                    long n = ((Number)value).longValue();
+                    for (int i = 0; i < width; i++) {
+                        bb.put((byte)(n >> (8 * i)));
+                    }
+                }
+                values.put(bb.array());
+            }
+            addBuffer(body, buffers, values.toByteArray());
+        }
+    }
+
+    private static int width(int type, Object[] params) {
+        switch (type) {
+        case INT:
+            return (Integer)params[0] / 8;
+        case FLOATING_POINT:
+            return ((Short)params[0] == SINGLE) ? 4 : 8;
+        case DECIMAL:
+            return (params.length > 2) ? (Integer)params[2] / 8 : 16;
+        case DATE:
+            return ((Short)params[0] == DAY) ? 4 : 8;
+        case TIME:
+            return (params.length > 1) ? (Integer)params[1] / 8 : 4;
+        case FIXED_SIZE_BINARY:
+            return (Integer)params[0];
+        default:
+            return 8;
+        }
+    }
+
+    /** Each buffer is padded to a multiple of 8 bytes. */
+    private static void addBuffer(Output body, List<long[]> buffers, byte[] bytes) {
+        buffers.add(new long[] { body.size(), bytes.length });
+        body.put(bytes);
+        while (body.size() % 8 != 0) {
+            body.put(new byte[1]);
+        }
+    }
+
+    /** A vector of <code>count</code> structs, already laid out. */
+    static class Structs {
+        final int count;
+        final byte[] bytes;
+
+        Structs(int count, byte[] bytes) {
+            this.count = count;
+            this.bytes = bytes;
+        }
+    }
+
+    static class Output {
+        private ByteBuffer bb = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        private void ensure(int length) {
+            if (bb.remaining() < length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(bb.capacity() * 2, bb.position() + length))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                bb.flip();
+                bigger.put(bb);
+                bb = bigger;
+            }
+        }
+
+        public Output put(byte[] bytes) {
+            ensure(bytes.length);
+            bb.put(bytes);
+            return this;
+        }
+
+        public Output putInt(int value) {
+            ensure(4);
+            bb.putInt(value);
+            return this;
+        }
+
+        public Output putLong(long value) {
+            ensure(8);
+            bb.putLong(value);
+            return this;
+        }
+
+        public int size() {
+            return bb.position();
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(bb.array(), bb.position());
+        }
+    }
+
+    /** Lays out FlatBuffers front to back: each object is followed by the
+     * ones it refers to, so that every offset points forward.
+     */
+    static class Builder {
+        private ByteBuffer bb = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+        public byte[] finish(Object[] root) {
+            bb.putInt(0);
+            bb.putInt(0, table(root));
+            align(8);
+            return Arrays.copyOf(bb.array(), bb.position());
+        }
+
+        private void align(int alignment) {
+            while (bb.position() % alignment != 0) {
+                bb.put((byte)0);
+            }
+        }
+
+        private static int size(Object value) {
+            if (value instanceof Byte) return 1;
+            if (value instanceof Short) return 2;
+            if (value instanceof Long) return 8;
+            return 4;
+        }
+
+        private int table(Object[] fields) {
+            align(2);
+            int vtable = bb.position();
+            int[] offsets = new int[fields.length];
+            int tableSize = 4;
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i] != null) {
+                    int size = size(fields[i]);
+                    tableSize = (tableSize + size - 1) / size * size;
+                    offsets[i] = tableSize;
+                    tableSize += size;
+                }
+            }
+            bb.putShort((short)(4 + 2 * fields.length));
+            bb.putShort((short)tableSize);
+            for (int offset : offsets) {
+                bb.putShort((short)offset);
+            }
+            align(8);
+            int table = bb.position();
+            bb.put(new byte[tableSize]);
+            bb.putInt(table, table - vtable);
+            for (int i = 0; i < fields.length; i++) {
+                Object value = fields[i];
+                int at = table + offsets[i];
+                if (value instanceof Byte) {
+                    bb.put(at, (Byte)value);
+                }
+                else if (value instanceof Short) {
+                    bb.putShort(at, (Short)value);
+                }
+                else if (value instanceof Integer) {
+                    bb.putInt(at, (Integer)value);
+                }
+                else if (value instanceof Long) {
+                    bb.putLong(at, (Long)value);
+                }
+            }
+            for (int i = 0; i < fields.length; i++) {
+                Object value = fields[i];
+                if ((value instanceof String) || (value instanceof Object[]) ||
+                    (value instanceof List) || (value instanceof Structs)) {
+                    int at = table + offsets[i];
+                    bb.putInt(at, reference(value) - at);
+                }
+            }
+            return table;
+        }
+
+        @SuppressWarnings("unchecked")
+        private int reference(Object value) {
+            if (value instanceof Object[]) {
+                return table((Object[])value);
+            }
+            if (value instanceof String) {
+                align(4);
+                int string = bb.position();
+                byte[] bytes = ((String)value).getBytes(UTF8_CHARSET);
+                bb.putInt(bytes.length).put(bytes).put((byte)0);
+                return string;
+            }
+            if (value instanceof Structs) {
+                Structs structs = (Structs)value;
+                while ((bb.position() + 4) % 8 != 0) {
+                    bb.put((byte)0);
+                }
+                int vector = bb.position();
+                bb.putInt(structs.count).put(structs.bytes);
+                return vector;
+            }
+            List<Object[]> tables = (List<Object[]>)value;
+            align(4);
+            int vector = bb.position();
+            bb.putInt(tables.size());
+            bb.put(new byte[4 * tables.size()]);
+            for (int i = 0; i < tables.size(); i++) {
+                int at = vector + 4 + 4 * i;
+                bb.putInt(at, table(tables.get(i)) - at);
+            }
+            return vector;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+package com.foundationdb.sql.client.load;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+public class ByteScannerTest
+{
+    @Test
+    public void sameAsOneByOne() {
+        Random random = new Random(42);
+        byte[] alphabet = { 'a', '\n', '\'', (byte)0x80, (byte)0xFF, 0, 0x7F, (byte)0x8A };
+        for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+            for (int n = 0; n < 200; n++) {
+                byte[] array = new byte[random.nextInt(40)];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = alphabet[random.nextInt(alphabet.length)];
+                }
+                ByteBuffer bytes = ByteBuffer.wrap(array).order(order);
+                int from = random.nextInt(array.length + 1);
+                for (byte a : alphabet) {
+                    byte b = alphabet[random.nextInt(alphabet.length)];
+                    assertEquals(scalarIndexOf(array, from, a, b),
+                                 ByteScanner.indexOf(bytes, from, array.length, a, b));
+                    assertEquals(scalarCount(array, from, a),
+                                 ByteScanner.count(bytes, from, array.length, a));
+                }
+            }
+        }
+    }
+
+    private static int scalarIndexOf(byte[] array, int from, byte a, byte b) {
+        for (int i = from; i < array.length; i++) {
+            if ((array[i] == a) || (array[i] == b)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int scalarCount(byte[] array, int from, byte b) {
+        int n = 0;
+        for (int i = from; i < array.length; i++) {
+            if (array[i] == b) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
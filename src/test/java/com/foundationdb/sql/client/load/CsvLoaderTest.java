@@ -18,6 +18,9 @@ package com.foundationdb.sql.client.load;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -46,6 +49,25 @@ public class CsvLoaderTest extends LoaderTestBase
         checkQuery("SELECT * FROM states", Arrays.asList(Arrays.asList((Object) "AL", "Birmingham"), Arrays.asList((Object) "MA", "Boston")));
     }
 
+    @Test
+    public void testTabDelimited() throws Exception {
+        loadDDL("DROP TABLE IF EXISTS states",
+                "CREATE TABLE states(abbrev CHAR(2) PRIMARY KEY, name VARCHAR(128))");
+        options.delimiter = '\t';
+        options.quote = null;
+        assertLoad(2, "AL\tBirmingham, \"Magic City\"","MA\tBoston");
+        checkQuery("SELECT * FROM states", Arrays.asList(Arrays.asList((Object) "AL", "Birmingham, \"Magic City\""), Arrays.asList((Object) "MA", "Boston")));
+    }
+
+    @Test
+    public void testEmptyAsNull() throws Exception {
+        loadDDL("DROP TABLE IF EXISTS states",
+                "CREATE TABLE states(abbrev CHAR(2) PRIMARY KEY, name VARCHAR(128), pop INT)");
+        options.emptyAsNull = true;
+        assertLoad(2, "AL,,","MA,\"\",7");
+        checkQuery("SELECT * FROM states", Arrays.asList(Arrays.asList((Object) "AL", null, null), Arrays.asList((Object) "MA", "", 7)));
+    }
+
     @Test
     public void testEscapeTableName() throws Exception {
         String escapedTable = "\"the ; , \"\" bad ; , ? ? states\"";
@@ -76,6 +98,115 @@ public class CsvLoaderTest extends LoaderTestBase
         checkQuery("SELECT * FROM states", Arrays.asList(Arrays.asList((Object) "AL", "Birmingham"), Arrays.asList((Object) "MA", "Boston")));
     }
 
+    @Test
+    public void testColumns() throws Exception {
+        loadDDL("DROP TABLE IF EXISTS states",
+                "CREATE TABLE states(abbrev CHAR(2) PRIMARY KEY, name VARCHAR(128), pop INT)");
+        options.columns = Arrays.asList("name", "-", "abbrev");
+        assertLoad(2, "Birmingham,x,AL,extra","Boston,y,MA");
+        checkQuery("SELECT * FROM states", Arrays.asList(Arrays.asList((Object) "AL", "Birmingham", null), Arrays.asList((Object) "MA", "Boston", null)));
+    }
+
+    @Test
+    public void testColumnsWithHeader() throws Exception {
+        loadDDL("DROP TABLE IF EXISTS states",
+                "CREATE TABLE states(abbrev CHAR(2) PRIMARY KEY, name VARCHAR(128), pop INT)");
+        options.format = Format.CSV_HEADER;
+        options.columns = Arrays.asList("abbrev", "pop");
+        assertLoad(2, "pop,name,abbrev", "7,Birmingham,AL","8,Boston,MA");
+        checkQuery("SELECT * FROM states", Arrays.asList(Arrays.asList((Object) "AL", null, 7), Arrays.asList((Object) "MA", null, 8)));
+    }
+
+    @Test
+    public void testOnDuplicateSkip() throws Exception {
+        loadDDL("DROP TABLE IF EXISTS states",
+                "CREATE TABLE states(abbrev CHAR(2) PRIMARY KEY, name VARCHAR(128))",
+                "INSERT INTO states VALUES ('MA', 'Boston')");
+        options.onDuplicate = OnDuplicate.SKIP;
+        assertLoad(2, "AL,Birmingham","MA,Worcester","NY,Albany");
+        checkQuery("SELECT * FROM states ORDER BY abbrev", Arrays.asList(Arrays.asList((Object) "AL", "Birmingham"), Arrays.asList((Object) "MA", "Boston"), Arrays.asList((Object) "NY", "Albany")));
+    }
+
+    @Test
+    public void testOnDuplicateUpdate() throws Exception {
+        loadDDL("DROP TABLE IF EXISTS states",
+                "CREATE TABLE states(abbrev CHAR(2) PRIMARY KEY, name VARCHAR(128))",
+                "INSERT INTO states VALUES ('MA', 'Boston')");
+        options.onDuplicate = OnDuplicate.UPDATE;
+        options.batchSize = 2;
+        assertLoad(2, "AL,Birmingham","MA,Worcester","NY,Albany");
+        checkQuery("SELECT * FROM states ORDER BY abbrev", Arrays.asList(Arrays.asList((Object) "AL", "Birmingham"), Arrays.asList((Object) "MA", "Worcester"), Arrays.asList((Object) "NY", "Albany")));
+    }
+
+    @Test
+    public void testRejects() throws Exception {
+        loadDDL("DROP TABLE IF EXISTS states",
+                "CREATE TABLE states(abbrev CHAR(2) PRIMARY KEY, name VARCHAR(128), pop INT)");
+        File rejectFile = File.createTempFile("rejects", ".csv");
+        rejectFile.deleteOnExit();
+        options.maxErrors = 5;
+        options.rejectFile = rejectFile;
+        options.batchSize = 4;
+        assertLoad(4, "AL,Birmingham,1", "AK,\"Anchorage\"x,2", "AZ,Phoenix,3", "CA,Los Angeles,many", "MA,Boston,5", "NY,Albany,6");
+        checkQuery("SELECT abbrev FROM states ORDER BY abbrev", Arrays.asList(listO("AL"), listO("AZ"), listO("MA"), listO("NY")));
+        List<String> rejected = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(rejectFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                rejected.add(line);
+            }
+        }
+        assertEquals(4, rejected.size());
+        assertThat(rejected.get(0), containsString("line 2, byte 16:"));
+        assertEquals("AK,\"Anchorage\"x,2", rejected.get(1));
+        assertThat(rejected.get(2), containsString("line 4, byte 47:"));
+        assertEquals("CA,Los Angeles,many", rejected.get(3));
+    }
+
+    @Test
+    public void testRejectsThreaded() throws Exception {
+        loadDDL("DROP TABLE IF EXISTS states",
+                "CREATE TABLE states(abbrev CHAR(4) PRIMARY KEY, name VARCHAR(128))");
+        File rejectFile = File.createTempFile("rejects", ".csv");
+        rejectFile.deleteOnExit();
+        options.maxErrors = 5;
+        options.rejectFile = rejectFile;
+        options.nthreads = 2;
+        String[] rows = new String[20];
+        List<List<Object>> expected = new ArrayList<>();
+        for (int i=0; i<20; i++) {
+            if (i == 3) {
+                // Before the split point, which has to parse past it.
+                rows[i] = String.format("\"A%03d\"x,named%d",i,i);
+                continue;
+            }
+            rows[i] = String.format("A%03d,named%d",i,i);
+            expected.add(Arrays.asList((Object) String.format("A%03d", i), "named" + i));
+        }
+        assertLoad(19, rows);
+        checkQuery("SELECT * FROM states ORDER BY abbrev", expected);
+        List<String> rejected = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(rejectFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                rejected.add(line);
+            }
+        }
+        assertEquals(2, rejected.size());
+        assertThat(rejected.get(0), containsString("line 4,"));
+        assertEquals(rows[3], rejected.get(1));
+    }
+
+    @Test
+    public void testTooManyRejects() throws Exception {
+        loadDDL("DROP TABLE IF EXISTS states",
+                "CREATE TABLE states(abbrev CHAR(2) PRIMARY KEY, name VARCHAR(128))");
+        options.maxErrors = 1;
+        expectsErrorOutput = true;
+        assertLoad(0, "AL,Birmingham", "\"AK\"x,Anchorage", "\"AZ\"x,Phoenix", "MA,Boston");
+        assertThat(errorStream.toString(), containsString("Too many rejected rows"));
+    }
+
     @Test
     public void testEmptyCsvWithoutHeader() throws Exception {
         // Note: Exception will be caught by main() and the message will be printed out
@@ -183,6 +314,21 @@ public class CsvLoaderTest extends LoaderTestBase
         checkQuery("SELECT * FROM states ORDER BY abbrev", expected);
     }
 
+    @Test
+    public void testPartialBatch() throws Exception {
+        loadDDL("DROP TABLE IF EXISTS states",
+                "CREATE TABLE states(abbrev CHAR(4) PRIMARY KEY, name VARCHAR(128))");
+        options.batchSize = 3;
+        String[] rows = new String[10];
+        List<List<Object>> expected = new ArrayList<>();
+        for (int i=0; i<10; i++) {
+            rows[i] = String.format("A%03d,named%d",i,i);
+            expected.add(Arrays.asList((Object) String.format("A%03d", i), "named" + i));
+        }
+        assertLoad(10, rows);
+        checkQuery("SELECT * FROM states ORDER BY abbrev", expected);
+    }
+
     @Test
     public void testBigInt() throws Exception {
         testDataType("BIGINT", Arrays.asList("-9223372036854775808", "-1", "0", "1", "9223372036854775807"),
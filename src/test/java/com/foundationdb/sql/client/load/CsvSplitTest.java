@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+package com.foundationdb.sql.client.load;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import static com.foundationdb.sql.client.load.LineReaderCsvBufferTest.tmpFileFrom;
+
+public class CsvSplitTest
+{
+    static final String encoding = "UTF-8";
+
+    @Test
+    public void absoluteLineNumbers() throws Exception {
+        File file = tmpFileFrom(true, "id,name",
+                                "1,one", "2,\"two", "lines\"", "3,three", "4,four",
+                                "5,\"five", "lines\"", "6,six", "7,seven");
+        LoadClientOptions options = new LoadClientOptions();
+        LoadClient client = new LoadClient(options);
+        try (FileInputStream istr = new FileInputStream(file)) {
+            FileChannel channel = istr.getChannel();
+            CsvLoader loader = new CsvLoader(client, channel, "t", true);
+            List<? extends SegmentLoader> segments = loader.split(3);
+            assertEquals(3, segments.size());
+            assertEquals(1, segments.get(0).startLineNo);
+            for (SegmentLoader segment : segments) {
+                assertEquals(newlinesBefore(channel, segment.start), segment.startLineNo);
+            }
+        }
+    }
+
+    @Test
+    public void rejectedRowBeforeSplit() throws Exception {
+        File file = tmpFileFrom(true, "1,one", "\"2\"x,two", "3,three", "4,four",
+                                "5,five", "6,six", "7,seven", "8,eight");
+        File rejectFile = File.createTempFile("rejects", ".csv");
+        rejectFile.deleteOnExit();
+        final Rejects rejects = new Rejects(5, rejectFile, encoding);
+        LoadClientOptions options = new LoadClientOptions();
+        LoadClient client = new LoadClient(options) {
+                @Override
+                public Rejects getRejects() {
+                    return rejects;
+                }
+            };
+        try (FileInputStream istr = new FileInputStream(file)) {
+            FileChannel channel = istr.getChannel();
+            CsvLoader loader = new CsvLoader(client, channel, "t", false);
+            List<? extends SegmentLoader> segments = loader.split(2);
+            assertEquals(2, segments.size());
+            for (SegmentLoader segment : segments) {
+                assertEquals(newlinesBefore(channel, segment.start), segment.startLineNo);
+            }
+        }
+        finally {
+            rejects.close();
+        }
+    }
+
+    @Test(expected = LineReader.ParseException.class)
+    public void badRowBeforeSplitWithoutRejects() throws Exception {
+        File file = tmpFileFrom(true, "1,one", "\"2\"x,two", "3,three", "4,four",
+                                "5,five", "6,six", "7,seven", "8,eight");
+        LoadClient client = new LoadClient(new LoadClientOptions());
+        try (FileInputStream istr = new FileInputStream(file)) {
+            new CsvLoader(client, istr.getChannel(), "t", false).split(2);
+        }
+    }
+
+    private static long newlinesBefore(FileChannel channel, long position) throws Exception {
+        ByteBuffer bytes = ByteBuffer.allocate((int)position);
+        channel.read(bytes, 0);
+        long count = 0;
+        for (byte b : bytes.array()) {
+            if (b == '\n') count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+package com.foundationdb.sql.client.load;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DumpInsertParserTest {
+
+    @Test
+    public void simple() {
+        MySQLBuffer.Query query = DumpInsertParser.parse("INSERT INTO states VALUES('AL', 'Alabama'),\n ('AK', 'Alaska');");
+        assertEquals(new MySQLBuffer.Query("INSERT INTO states VALUES(?,?),(?,?)",
+                                           new String[] { "AL", "Alabama", "AK", "Alaska" }),
+                     query);
+        assertEquals("states", query.getTableName());
+        assertEquals(2, query.getRows().size());
+    }
+
+    @Test
+    public void literals() {
+        MySQLBuffer.Query query = DumpInsertParser.parse("INSERT INTO \"s\".\"values\" VALUES(1, -2.5, 1e-3, NULL, 'it''s');");
+        assertEquals(new MySQLBuffer.Query("INSERT INTO \"s\".\"values\" VALUES(?,?,?,?,?)",
+                                           new String[] { "1", "-2.5", "1e-3", null, "it's" }),
+                     query);
+        assertEquals("\"s\".\"values\"", query.getTableName());
+    }
+
+    @Test
+    public void unsupported() {
+        assertNull(DumpInsertParser.parse("CREATE TABLE t(id INT);"));
+        assertNull(DumpInsertParser.parse("INSERT INTO t VALUES(E'a\\'b');"));
+        assertNull(DumpInsertParser.parse("INSERT INTO t VALUES(DATE '2014-01-01');"));
+        assertNull(DumpInsertParser.parse("INSERT INTO t VALUES(TRUE);"));
+        assertNull(DumpInsertParser.parse("INSERT INTO t VALUES(1 + 2);"));
+        assertNull(DumpInsertParser.parse("INSERT INTO t VALUES(1),(1, 2);"));
+        assertNull(DumpInsertParser.parse("INSERT INTO t SELECT * FROM u;"));
+    }
+}
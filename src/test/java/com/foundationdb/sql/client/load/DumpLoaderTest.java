@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2012-2013 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DumpLoaderTest
+{
+    static final String encoding = "UTF-8";
+
+    @Test
+    public void splitSections() throws Exception {
+        File file = new File(LoadClientTest.RESOURCE_DIR, "states-full.sql");
+        LoadClientOptions options = new LoadClientOptions();
+        options.nthreads = 4;
+        LoadClient client = new LoadClient(options);
+        try (FileInputStream istr = new FileInputStream(file)) {
+            FileChannel channel = istr.getChannel();
+            DumpLoader loader = new DumpLoader(client, channel);
+            loader.checkFormat();
+            List<? extends SegmentLoader> segments = loader.split(4);
+            List<String> data = new ArrayList<>();
+            for (SegmentLoader segment : segments) {
+                data.add(text(channel, segment.start, segment.end));
+            }
+            // The states INSERTs are cut into pieces of about a quarter of the data; capitals is separate.
+            int inserts = 0;
+            for (String text : data) {
+                assertTrue(text, text.trim().startsWith("INSERT INTO "));
+                assertFalse(text, text.contains("CREATE "));
+                inserts += text.split("INSERT INTO ", -1).length - 1;
+            }
+            assertEquals(4, inserts);
+            assertTrue(data.get(data.size() - 1).trim().startsWith("INSERT INTO capitals "));
+            List<long[]> before = ((DumpLoader.DumpSegmentRangesLoader)loader.before()).getRanges();
+            assertEquals(2, before.size());
+            assertTrue(text(channel, before.get(0)[0], before.get(0)[1]).contains("CREATE INDEX name ON states(name);"));
+            String capitals = text(channel, before.get(1)[0], before.get(1)[1]);
+            assertTrue(capitals, capitals.startsWith("\n\n--- capitals\n"));
+            assertTrue(capitals, capitals.contains("CREATE TABLE capitals("));
+            assertEquals(61, before.get(1)[2]);
+            List<long[]> after = ((DumpLoader.DumpSegmentRangesLoader)loader.after()).getRanges();
+            assertEquals(1, after.size());
+            assertEquals("ALTER TABLE capitals ADD CONSTRAINT capitals_state FOREIGN KEY(state) REFERENCES states(abbrev);",
+                         text(channel, after.get(0)[0], after.get(0)[1]).trim());
+            assertEquals(channel.size() - 1, after.get(0)[1]);
+        }
+    }
+
+    @Test
+    public void deferIndexes() throws Exception {
+        File file = new File(LoadClientTest.RESOURCE_DIR, "states-full.sql");
+        LoadClientOptions options = new LoadClientOptions();
+        options.nthreads = 2;
+        options.deferIndexes = true;
+        LoadClient client = new LoadClient(options);
+        try (FileInputStream istr = new FileInputStream(file)) {
+            FileChannel channel = istr.getChannel();
+            DumpLoader loader = new DumpLoader(client, channel);
+            loader.checkFormat();
+            loader.split(2);
+            for (long[] range : ((DumpLoader.DumpSegmentRangesLoader)loader.before()).getRanges()) {
+                assertFalse(text(channel, range[0], range[1]).contains("CREATE INDEX"));
+            }
+            DumpLoader.DumpSegmentAfterDataLoader after = (DumpLoader.DumpSegmentAfterDataLoader)loader.after();
+            assertEquals(1, after.indexes.size());
+            List<long[]> ranges = after.indexes.get(0).getRanges();
+            assertEquals(1, ranges.size());
+            assertEquals("CREATE INDEX name ON states(name);", text(channel, ranges.get(0)[0], ranges.get(0)[1]).trim());
+            assertEquals(1, after.getRanges().size());
+        }
+    }
+
+    @Test
+    public void deferIndexesForDirectory() throws Exception {
+        File file = new File(LoadClientTest.RESOURCE_DIR, "states-full.sql");
+        LoadClientOptions options = new LoadClientOptions();
+        options.deferIndexes = true;
+        final List<DumpLoader.DeferredIndexLoader> indexes = new ArrayList<>();
+        LoadClient client = new LoadClient(options) {
+            @Override
+            List<DumpLoader.DeferredIndexLoader> getDirectoryIndexes() {
+                return indexes;
+            }
+        };
+        try (FileInputStream istr = new FileInputStream(file)) {
+            FileChannel channel = istr.getChannel();
+            DumpLoader loader = new DumpLoader(client, channel);
+            loader.checkFormat();
+            loader.wholeFile();
+            for (long[] range : ((DumpLoader.DumpSegmentRangesLoader)loader.before()).getRanges()) {
+                assertFalse(text(channel, range[0], range[1]).contains("CREATE INDEX"));
+            }
+            // Not built when this file is done, but handed over for after the whole directory.
+            assertTrue(((DumpLoader.DumpSegmentAfterDataLoader)loader.after()).indexes.isEmpty());
+            assertEquals(1, indexes.size());
+            assertEquals(Arrays.asList("CREATE INDEX name ON states(name);"), indexes.get(0).getStatements());
+        }
+    }
+
+    private static String text(FileChannel channel, long start, long end) throws Exception {
+        ByteBuffer bytes = ByteBuffer.allocate((int)(end - start));
+        channel.read(bytes, start);
+        return new String(bytes.array(), encoding);
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+
+package com.foundationdb.sql.client.load;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.foundationdb.sql.client.load.LineReaderCsvBufferTest.tmpFileFrom;
+import static org.junit.Assert.assertFalse;
+
+public class DumpPipelineTest extends LoaderTestBase
+{
+    private static final String TABLES_QUERY =
+        "SELECT table_name FROM information_schema.tables WHERE table_schema = '" + SCHEMA_NAME + "' ORDER BY table_name";
+
+    @Before
+    public void setupOptions() {
+        super.setupOptions();
+        options.format = Format.FDB_SQL;
+        options.pipeline = 10;
+    }
+
+    @Test
+    public void testInserts() throws Exception {
+        assertLoad(3, "DROP TABLE IF EXISTS t;",
+                   "CREATE TABLE t(id INT PRIMARY KEY);",
+                   "INSERT INTO t VALUES(1);",
+                   "INSERT INTO t VALUES(2);",
+                   "INSERT INTO t VALUES(3);");
+        checkQuery("SELECT * FROM t ORDER BY id", Arrays.asList(listO(1), listO(2), listO(3)));
+    }
+
+    @Test
+    public void testFailedDDL() throws Exception {
+        expectsErrorOutput = true;
+        LoadClient client = new LoadClient(options);
+        try {
+            client.load(tmpFileFrom(true,
+                                    "DROP TABLE IF EXISTS a;",
+                                    "CREATE TABLE a(id INT PRIMARY KEY);",
+                                    "CREATE TABLE b(id INT PRIMARY KEY);",
+                                    "CREATE TABLE a(id INT PRIMARY KEY);",
+                                    "CREATE TABLE c(id INT PRIMARY KEY);"));
+        }
+        finally {
+            client.clearConnections();
+        }
+        // The DDL before the failure is kept, and nothing after it is run.
+        checkQuery(TABLES_QUERY, Arrays.asList(listO("a"), listO("b")));
+        assertFalse(errorStream.toString().isEmpty());
+    }
+}
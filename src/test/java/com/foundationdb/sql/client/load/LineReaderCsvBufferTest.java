@@ -79,6 +79,133 @@ public class LineReaderCsvBufferTest {
         assertReadLines(Arrays.asList(Arrays.asList("a field", "the \"second\" field")), "a field,\"the \"\"second\"\" field\"");
     }
 
+    @Test
+    public void tabDelimited() throws Exception {
+        CsvFormat format = new CsvFormat('\t', '"', null, null, false);
+        assertReadLines(new CsvBuffer(format), Arrays.asList(Arrays.asList("a,field", "field2")), "a,field\tfield2");
+    }
+
+    @Test
+    public void pipeDelimitedTrailing() throws Exception {
+        CsvFormat format = new CsvFormat('|', '"', null, null, true);
+        assertReadLines(new CsvBuffer(format), Arrays.asList(Arrays.asList("field1", "field2"), Arrays.asList("", "field4")),
+                        "field1|field2|", "|field4|");
+    }
+
+    @Test
+    public void noQuote() throws Exception {
+        CsvFormat format = new CsvFormat(',', null, null, null, false);
+        assertReadLines(new CsvBuffer(format), Arrays.asList(Arrays.asList("a \"field\"", "\"")), "a \"field\",\"");
+    }
+
+    @Test
+    public void backslashEscape() throws Exception {
+        CsvFormat format = new CsvFormat(',', '"', '\\', null, false);
+        assertReadLines(new CsvBuffer(format), Arrays.asList(Arrays.asList("a \"quoted\" field", "a,b")),
+                        "\"a \\\"quoted\\\" field\",a\\,b");
+    }
+
+    @Test
+    public void nullString() throws Exception {
+        CsvFormat format = new CsvFormat(',', '"', null, "\\N", false);
+        assertReadLines(new CsvBuffer(format), Arrays.asList(Arrays.asList("a", null, "\\N")), "a,\\N,\"\\N\"");
+    }
+
+    @Test
+    public void quoteFreeFallsBack() throws Exception {
+        CsvFormat format = new CsvFormat(',', '"', null, "", false);
+        assertReadLines(new CsvBuffer(format, true),
+                        Arrays.asList(Arrays.asList("field1", null), Arrays.asList("a,field", ""), Arrays.asList("x", "y")),
+                        "field1,", "", "\"a,field\",\"\"", "x,y\r");
+    }
+
+    @Test
+    public void projection() throws Exception {
+        for (boolean quoteFree : new boolean[] { false, true }) {
+            CsvBuffer b = new CsvBuffer(CsvFormat.DEFAULT, quoteFree);
+            b.setProjection(new int[] { 1, -1, 0 }, 2);
+            assertReadLines(b, Arrays.asList(Arrays.asList("c", "a"), Arrays.asList("\"f\"", "d"), Arrays.asList("i", "g")),
+                            "a,b,c", "d,e,\"\"\"f\"\"\"", "g,h,i,j");
+        }
+    }
+
+    @Test
+    public void rowBatch() throws Exception {
+        CsvFormat format = new CsvFormat(',', '"', null, "", false);
+        File file = tmpFileFrom(true, "a,b,c", "d,,\"\"\"f\"\"\"", "g,h,\"\"");
+        RowBatch batch = new RowBatch();
+        for (boolean project : new boolean[] { false, true }) {
+            CsvBuffer b = new CsvBuffer(format, true);
+            if (project) {
+                b.setProjection(new int[] { 1, -1, 0 }, 2);
+            }
+            batch.clear();
+            try (FileInputStream istr = new FileInputStream(file)) {
+                LineReader lines = new LineReader(istr.getChannel(), encoding);
+                while (lines.readLine(b)) {
+                    b.nextRow(batch);
+                }
+            }
+            assertEquals(3, batch.size());
+            if (project) {
+                assertArrayEquals(new String[] { "c", "a" }, batch.get(0));
+                assertArrayEquals(new String[] { "\"f\"", "d" }, batch.get(1));
+                assertArrayEquals(new String[] { "", "g" }, batch.get(2));
+            }
+            else {
+                assertArrayEquals(new String[] { "a", "b", "c" }, batch.get(0));
+                assertArrayEquals(new String[] { "d", null, "\"f\"" }, batch.get(1));
+                assertArrayEquals(new String[] { "g", "h", "" }, batch.get(2));
+            }
+        }
+    }
+
+    @Test(expected = LineReader.ParseException.class)
+    public void projectionShortRow() throws Exception {
+        CsvBuffer b = new CsvBuffer(CsvFormat.DEFAULT, true);
+        b.setProjection(new int[] { 0, -1, 1 }, 2);
+        assertReadLines(b, Arrays.<List<String>>asList(), "a,b");
+    }
+
+    @Test
+    public void bytePosition() throws Exception {
+        String[] input = { "a,\u00e9", "\"b\",\ud83d\ude00", "\u4e2d,d" };
+        File file = tmpFileFrom(true, input);
+        try (FileInputStream istr = new FileInputStream(file)) {
+            LineReader lines = new LineReader(istr.getChannel(), encoding, FileLoader.SMALL_BUFFER_SIZE, 128, 0, file.length());
+            CsvBuffer csv = new CsvBuffer();
+            long expected = 0;
+            for (String line : input) {
+                assertTrue(lines.readLine(csv));
+                csv.nextStatement();
+                expected += (line + "\n").getBytes(encoding).length;
+                assertEquals(line, expected, lines.bytePosition());
+            }
+            assertEquals(file.length(), lines.bytePosition());
+        }
+    }
+
+    @Test
+    public void discardBadRow() throws Exception {
+        File file = tmpFileFrom(true, "a,b", "\"c\"d,e", "f,g");
+        try (FileInputStream istr = new FileInputStream(file)) {
+            LineReader lines = new LineReader(istr.getChannel(), encoding, FileLoader.SMALL_BUFFER_SIZE, 128, 0, file.length());
+            CsvBuffer csv = new CsvBuffer();
+            assertTrue(lines.readLine(csv));
+            assertEquals(Arrays.asList("a", "b"), csv.nextStatement());
+            try {
+                lines.readLine(csv);
+                fail("Expected parse error");
+            } catch (LineReader.ParseException ex) {
+                csv.discard();
+            }
+            assertEquals(11, lines.bytePosition());
+            assertTrue(lines.readLine(csv));
+            assertEquals(Arrays.asList("f", "g"), csv.nextStatement());
+            assertFalse(lines.readLine(csv));
+        }
+    }
+
     @Test
     public void testSplit() throws Exception {
         String line1 = "first row,has the value,3";
@@ -106,17 +233,44 @@ public class LineReaderCsvBufferTest {
         }
     }
 
+    @Test
+    public void splitParseFullBuffer() throws Exception {
+        String line1 = "première ligne,a la valeur,3";
+        String line2 = "deuxième ligne,a la valeur,17";
+        String line3 = "troisième ligne,a la valeur,950";
+        File file = tmpFileFrom(true, line1, line2, line3);
+        long size = file.length();
+        try (FileInputStream istr = new FileInputStream(file)) {
+            LineReader lines = new LineReader(istr.getChannel(), encoding,
+                                              FileLoader.BUFFER_SIZE, FileLoader.BUFFER_SIZE, 0, size);
+            long splitPoint = lines.splitParse(size / 4, new CsvBuffer());
+            assertEquals(line1.getBytes(encoding).length + 1, splitPoint);
+            lines.position(splitPoint);
+            long splitPoint2 = lines.splitParse(splitPoint + 1, new CsvBuffer());
+            assertEquals(splitPoint + line2.getBytes(encoding).length + 1, splitPoint2);
+            lines = new LineReader(istr.getChannel(), encoding, FileLoader.SMALL_BUFFER_SIZE, 128, splitPoint, splitPoint2);
+            assertRows(Arrays.asList(Arrays.asList("deuxième ligne", "a la valeur", "17")), new CsvBuffer(), lines);
+        }
+    }
+
     private static void assertReadLines(List<List<String>> expected, String... input) throws Exception {
         assertReadLines(true, expected, input);
     }
 
     private static void assertReadLines(boolean insertNewlines, List<List<String>> expected, String... input) throws Exception {
+        assertReadLines(insertNewlines, new CsvBuffer(), expected, input);
+    }
+
+    private static void assertReadLines(CsvBuffer b, List<List<String>> expected, String... input) throws Exception {
+        assertReadLines(true, b, expected, input);
+    }
+
+    private static void assertReadLines(boolean insertNewlines, CsvBuffer b, List<List<String>> expected, String... input) throws Exception {
         File file = tmpFileFrom(insertNewlines, input);
         FileInputStream istr = null;
         try {
             istr = new FileInputStream(file);
             LineReader lines = new LineReader(istr.getChannel(), encoding, 1);
-            CsvBuffer b = new CsvBuffer();
             assertRows(expected, b, lines);
         } finally {
             if (istr != null) {
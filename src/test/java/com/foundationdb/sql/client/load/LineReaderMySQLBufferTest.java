@@ -63,6 +63,12 @@ public class LineReaderMySQLBufferTest {
         assertReadLines("/*!40101 SET @OLD_C * \nHAR;ACTER_SE / T_\nC;LI/E`NT=@@C\"HARA*CTER_SET_C'LIENT */");
     }
 
+    @Test
+    public void testNullLiteral() throws Exception {
+        assertReadLines(query("INSERT INTO \"t\" VALUES (?, ?, ?)", "1", null, "NULL"),
+                        "INSERT INTO t VALUES (1,NULL,'NULL');");
+    }
+
     @Test
     public void testEmptyStatement() throws Exception {
         assertReadLines(";");
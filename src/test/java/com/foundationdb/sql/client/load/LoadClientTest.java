@@ -108,6 +108,12 @@ public class LoadClientTest extends ClientTestBase
                 query = value;
             else if ("expected".equals(key))
                 expectedFile = new File(dir, value);
+            else if ("prepared-inserts".equals(key))
+                options.preparedInserts = Boolean.parseBoolean(value);
+            else if ("batch-size".equals(key))
+                options.batchSize = Integer.parseInt(value);
+            else if ("pipeline".equals(key))
+                options.pipeline = Integer.parseInt(value);
             else if ("retry".equals(key))
                 options.maxRetries = Integer.parseInt(value);
             else if ("hosts".equals(key)) {
@@ -73,6 +73,17 @@ public class MySQLLoaderTest extends LoaderTestBase
         checkQuery("SELECT * FROM states ORDER BY abbrev", expected);
     }
 
+    @Test
+    public void testOnDuplicateSkip() throws Exception {
+        loadDDL("DROP TABLE IF EXISTS states",
+                "CREATE TABLE states (abbrev CHAR(2) PRIMARY KEY, name VARCHAR(128))",
+                "INSERT INTO states VALUES ('MA', 'Boston')");
+        options.onDuplicate = OnDuplicate.SKIP;
+        assertLoad(2, "INSERT INTO `states` VALUES (AL,Birmingham),(MA,Worcester);",
+                      "INSERT INTO `states` VALUES (NY,Albany);");
+        checkQuery("SELECT * FROM states ORDER BY abbrev", Arrays.asList(listO("AL", "Birmingham"), listO("MA", "Boston"), listO("NY", "Albany")));
+    }
+
     @Test
     public void testMultipleRows() throws Exception {
         loadDDL("DROP TABLE IF EXISTS states",
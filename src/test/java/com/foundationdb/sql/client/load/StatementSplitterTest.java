@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2012-2014 FoundationDB, LLC
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License, version 3,
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses.
+ */
+package com.foundationdb.sql.client.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StatementSplitterTest {
+    static final String encoding = "UTF-8";
+
+    @Test
+    public void simple() throws IOException {
+        assertEquals(list("SELECT 1;", "SELECT 2;"),
+                     split(8, "SELECT 1;\n  SELECT 2;\n"));
+    }
+
+    @Test
+    public void quotes() throws IOException {
+        assertEquals(list("INSERT INTO t VALUES('a;b', 'it''s', \"x;y\", `p;q`);",
+                          "SELECT $$ ; $$;"),
+                     split(16, "INSERT INTO t VALUES('a;b', 'it''s', \"x;y\", `p;q`);",
+                           "SELECT $$ ; $$;"));
+    }
+
+    @Test
+    public void escapeString() throws IOException {
+        assertEquals(list("INSERT INTO t VALUES(E'\\';', 'e\\');"),
+                     split(128, "INSERT INTO t VALUES(E'\\';', 'e\\');"));
+    }
+
+    @Test
+    public void comments() throws IOException {
+        assertEquals(list("CREATE TABLE t( \n  id INT /* the; /* key; */ */\n);",
+                          "SELECT '--';"),
+                     split(4, "--- group t;",
+                           "CREATE TABLE t( -- comment;",
+                           "  id INT /* the; /* key; */ */",
+                           ");",
+                           "-- another;",
+                           "SELECT '--';"));
+    }
+
+    @Test
+    public void noSemicolon() throws IOException {
+        assertEquals(list("SELECT 1;", "SELECT 2"),
+                     split(128, "SELECT 1;", "SELECT 2", "-- done"));
+    }
+
+    @Test
+    public void positions() throws IOException {
+        File file = tmpFileFrom("--- group a",
+                                "CREATE TABLE a(é INT);",
+                                "",
+                                "--- group b",
+                                "--- b.c",
+                                "SELECT 'x';");
+        try (FileInputStream istr = new FileInputStream(file)) {
+            StatementSplitter statements = new StatementSplitter(istr.getChannel(), encoding,
+                                                                 8, 0, file.length());
+            assertTrue(statements.next());
+            assertEquals(12, statements.getStart());
+            assertEquals(35, statements.getEnd());
+            assertEquals(1, statements.getLineCounter());
+            assertEquals(1, statements.getSections());
+            assertTrue(statements.next());
+            assertEquals(57, statements.getStart());
+            assertEquals(68, statements.getEnd());
+            assertEquals(5, statements.getLineCounter());
+            assertEquals(3, statements.getSections());
+            assertFalse(statements.next());
+        }
+    }
+
+    private static List<String> list(String... statements) {
+        List<String> result = new ArrayList<>();
+        for (String statement : statements) {
+            result.add(statement);
+        }
+        return result;
+    }
+
+    private static List<String> split(int byteSize, String... lines) throws IOException {
+        File file = tmpFileFrom(lines);
+        List<String> result = new ArrayList<>();
+        try (FileInputStream istr = new FileInputStream(file)) {
+            StatementSplitter statements = new StatementSplitter(istr.getChannel(), encoding,
+                                                                 byteSize, 0, file.length());
+            while (statements.next()) {
+                result.add(statements.getStatement());
+            }
+        }
+        return result;
+    }
+
+    private static File tmpFileFrom(String... lines) throws IOException {
+        File tmpFile = File.createTempFile(StatementSplitterTest.class.getSimpleName(), null);
+        tmpFile.deleteOnExit();
+        try (FileOutputStream ostr = new FileOutputStream(tmpFile)) {
+            for (String l : lines) {
+                ostr.write(l.getBytes(encoding));
+                ostr.write('\n');
+            }
+        }
+        return tmpFile;
+    }
+}
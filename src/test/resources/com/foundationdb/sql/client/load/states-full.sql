@@ -0,0 +1,77 @@
+--- states
+
+DROP TABLE IF EXISTS states;
+
+CREATE TABLE states(
+  abbrev CHAR(2) NOT NULL,
+  CONSTRAINT states_pkey PRIMARY KEY (abbrev),
+  name VARCHAR(128)
+);
+
+CREATE INDEX name ON states(name);
+
+INSERT INTO states VALUES('AL', 'Alabama'),
+                         ('AK', 'Alaska'),
+                         ('AZ', 'Arizona'),
+                         ('AR', 'Arkansas'),
+                         ('CA', 'California'),
+                         ('CO', 'Colorado'),
+                         ('CT', 'Connecticut'),
+                         ('DE', 'Delaware'),
+                         ('FL', 'Florida'),
+                         ('GA', 'Georgia'),
+                         ('HI', 'Hawaii'),
+                         ('ID', 'Idaho'),
+                         ('IL', 'Illinois'),
+                         ('IN', 'Indiana'),
+                         ('IA', 'Iowa'),
+                         ('KS', 'Kansas'),
+                         ('KY', 'Kentucky'),
+                         ('LA', 'Louisiana'),
+                         ('ME', 'Maine'),
+                         ('MT', 'Montana'),
+                         ('NE', 'Nebraska'),
+                         ('NV', 'Nevada'),
+                         ('NH', 'New Hampshire');
+INSERT INTO states VALUES('NJ', 'New Jersey'),
+                         ('NM', 'New Mexico'),
+                         ('NY', 'New York'),
+                         ('NC', 'North Carolina'),
+                         ('ND', 'North Dakota'),
+                         ('OH', 'Ohio'),
+                         ('OK', 'Oklahoma'),
+                         ('OR', 'Oregon'),
+                         ('MD', 'Maryland'),
+                         ('MA', 'Massachusetts'),
+                         ('MI', 'Michigan'),
+                         ('MN', 'Minnesota'),
+                         ('MS', 'Mississippi'),
+                         ('MO', 'Missouri'),
+                         ('PA', 'Pennsylvania'),
+                         ('RI', 'Rhode Island'),
+                         ('SC', 'South Carolina'),
+                         ('SD', 'South Dakota'),
+                         ('TN', 'Tennessee'),
+                         ('TX', 'Texas'),
+                         ('UT', 'Utah'),
+                         ('VT', 'Vermont');
+INSERT INTO states VALUES('VA', 'Virginia'),
+                         ('WA', 'Washington'),
+                         ('WV', 'West Virginia'),
+                         ('WI', 'Wisconsin'),
+                         ('WY', 'Wyoming');
+
+--- capitals
+
+DROP TABLE IF EXISTS capitals;
+
+CREATE TABLE capitals(
+  state CHAR(2) NOT NULL,
+  CONSTRAINT capitals_pkey PRIMARY KEY (state),
+  city VARCHAR(128)
+);
+
+INSERT INTO capitals VALUES('AL', 'Montgomery'),
+                           ('MA', 'Boston');
+
+ALTER TABLE capitals ADD CONSTRAINT capitals_state FOREIGN KEY(state) REFERENCES states(abbrev);